@@ -0,0 +1,76 @@
+#!/bin/bash
+
+# cooks the game's assets from the bits and pieces in this directory. expects to be called
+# in this directory. libgdx (including gdx-tools) must be in the classpath, ffmpeg must be
+# on the search path.
+#
+# textures: every directory in ATLASES is packed into ../assets/textures/<name>.atlas. How
+# (pixel format, page size, ...) is configured by the pack.json file in the directory. Pages
+# are merged by allowing a larger maxWidth/maxHeight there (fewer pages -> fewer texture binds).
+#
+# audio: music and sound effects are transcoded to OGG Vorbis, so only one decoder is needed.
+# files that are already shipped as MP3 or WAV, but have no source in here, are transcoded
+# as well.
+#
+# the game keeps asking for the files by their old names. ../assets/assets.manifest tells the
+# AssetManager which files to load instead (see ManifestResolver). it is rebuilt on every run
+# from the names the code asks for and the files that are actually shipped.
+#
+# a shipped file is only ever deleted once its replacement is in place, so running this again
+# (or after a failed run) gives the same result.
+
+ATLASES="global menuscreen gamblescreen"
+AUDIO="music sfx"
+OGGQUALITY=6
+MANIFEST=../assets/assets.manifest
+
+set -e
+
+for atlas in $ATLASES; do
+  out=`mktemp -d`
+  java com.badlogic.gdx.tools.imagepacker.TexturePacker2 $atlas $out $atlas.atlas
+  # the new atlas may have fewer pages than the old one: drop every page the old one lists.
+  if [ -f ../assets/textures/$atlas.atlas ]; then
+    grep -E '^[^ ].*\.png$' ../assets/textures/$atlas.atlas | while read -r page; do
+      rm -f "../assets/textures/$page"
+    done
+  fi
+  mv $out/* ../assets/textures/
+  rmdir $out
+done
+
+# transcode <source> <asset directory>
+transcode() {
+  local base=`basename "$1"`
+  base="${base%.*}"
+  ffmpeg -y -loglevel error -i "$1" -vn -c:a libvorbis -q:a $OGGQUALITY "../assets/$2/$base.ogg.tmp"
+  mv "../assets/$2/$base.ogg.tmp" "../assets/$2/$base.ogg"
+  # only now that the OGG is in place, drop the files it replaces.
+  rm -f "../assets/$2/$base.mp3" "../assets/$2/$base.wav"
+}
+
+for dir in $AUDIO; do
+  for i in ../assets/$dir/*.mp3 ../assets/$dir/*.wav; do
+    [ -f "$i" ] || continue
+    base=`basename "$i"`
+    base="${base%.*}"
+    # prefer the original recording over a shipped (lossy) copy.
+    if ! ls "$dir/$base".* >/dev/null 2>&1; then
+      transcode "$i" $dir
+    fi
+  done
+  for i in $dir/*; do
+    [ -f "$i" ] || continue
+    transcode "$i" $dir
+  done
+done
+
+# every audio file the code asks for that is no longer shipped, but has an OGG of the same name.
+echo "# generated by raw-data/cook.sh. requested=shipped" > $MANIFEST.tmp
+grep -rhoE "\"(${AUDIO// /|})/[^\"]+\.(mp3|wav)\"" ../src | tr -d '"' | sort -u | while read -r requested; do
+  shipped="${requested%.*}.ogg"
+  if [ ! -f "../assets/$requested" ] && [ -f "../assets/$shipped" ]; then
+    echo "$requested=$shipped" >> $MANIFEST.tmp
+  fi
+done
+mv $MANIFEST.tmp $MANIFEST
@@ -2,6 +2,7 @@ package de.onyxbits.bureauengine;
 
 import com.badlogic.gdx.Game;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
 import com.badlogic.gdx.Preferences;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
@@ -18,7 +19,12 @@ import java.util.Random;
 
 import de.onyxbits.bureauengine.audio.NullMusic;
 import de.onyxbits.bureauengine.audio.MuteManager;
+import de.onyxbits.bureauengine.debug.FrameProfiler;
+import de.onyxbits.bureauengine.debug.PhaseTimer;
+import de.onyxbits.bureauengine.debug.ProfilingSpriteBatch;
 import de.onyxbits.bureauengine.screen.BureauScreen;
+import de.onyxbits.bureauengine.state.PersistenceService;
+import de.onyxbits.bureauengine.util.ManifestResolver;
 
 /**
  * A game that consists of several more or less independant screens between which
@@ -42,18 +48,37 @@ public abstract class BureauGame extends Game {
   public MuteManager muteManager;
   
   /**
-   * Global preferences. This is a managed object that will get automatically flushed 
-   * when the game is paused or destroyed. Note: Do not store anything in this object
-   * and then try to retrieve it without doing a <code>flush()</code> in between! At
-   * least on Android, this will fail and you will get the old value!
+   * Global preferences. This is a managed object that will get automatically synced 
+   * when the game is paused or destroyed. Changes are buffered in memory (and can be read
+   * back right away). <code>flush()</code> only schedules writing them on a background
+   * thread, so it is safe to call from the rendering thread.
    */
-  public static Preferences prefs;
+  public PersistenceService prefs;
   
   /**
-   * General purpose Random Number Generator.
+   * General purpose Random Number Generator. Every game instance owns its own, so several
+   * games (or sessions) may share one VM without drawing from the same sequence.
    */
-  public static final Random rng = new Random(System.currentTimeMillis());
-
+  public final Random rng = new Random(System.currentTimeMillis());
+  
+  /**
+   * Draw call statistics overlay (toggled with F3). Null if the <code>spriteBatch</code> is
+   * not a <code>ProfilingSpriteBatch</code>.
+   */
+  public FrameProfiler profiler;
+  
+  /**
+   * Times the phases of every frame. Disabled unless the <code>PhaseTimer.PREFKEY</code>
+   * preference is set. A report is written to <code>PhaseTimer.LOGFILE</code> whenever the game
+   * is paused.
+   */
+  public final PhaseTimer phaseTimer = new PhaseTimer();
+  
+  /**
+   * For toggling the <code>profiler</code> once per key press
+   */
+  private boolean profilerKeyDown;
+  
   
   /**
    * The game is booted in this order:<p>
@@ -66,15 +91,22 @@ public abstract class BureauGame extends Game {
    */
   @Override
   public void create() {
-    prefs = createPreferences();
+    Preferences backing = createPreferences();
+    if (backing!=null) prefs = new PersistenceService(backing,1000);
+    if (prefs!=null) phaseTimer.setEnabled(prefs.getBoolean(PhaseTimer.PREFKEY,false));
     bootGame();
     spriteBatch = createSpriteBatch();
+    if (spriteBatch instanceof ProfilingSpriteBatch) {
+      profiler = new FrameProfiler((ProfilingSpriteBatch)spriteBatch,Gdx.files.local(FrameProfiler.LOGFILE));
+    }
     assetManager = createAssetManager();
     muteManager = createMuteManager();
     
     BureauScreen tmp = createStartUpScreen();
+    long start = phaseTimer.start();
     tmp.prepareAssets(true);
     tmp.readyScreen();
+    phaseTimer.stop(tmp,PhaseTimer.LOAD,start);
     setScreen(tmp);
     Texture.setAssetManager(assetManager);
   }
@@ -87,7 +119,20 @@ public abstract class BureauGame extends Game {
     if (assetManager!=null) {
       assetManager.finishLoading();
     }
-    prefs = createPreferences();
+  }
+  
+  @Override
+  public void render() {
+    long start = phaseTimer.start();
+    if (profiler!=null) {
+      boolean keyDown = Gdx.input.isKeyPressed(Input.Keys.F3);
+      if (keyDown && !profilerKeyDown) profiler.setVisible(!profiler.isVisible());
+      profilerKeyDown=keyDown;
+      profiler.beginFrame();
+    }
+    super.render();
+    if (profiler!=null) profiler.endFrame(getScreen());
+    phaseTimer.stop(getScreen(),PhaseTimer.FRAME,start);
   }
   
   /**
@@ -95,7 +140,9 @@ public abstract class BureauGame extends Game {
    */
   @Override
   public void pause() {
-    if (prefs!=null) prefs.flush();
+    if (profiler!=null && profiler.isVisible()) profiler.writeLog();
+    if (phaseTimer.isEnabled()) phaseTimer.writeReport(Gdx.files.local(PhaseTimer.LOGFILE));
+    if (prefs!=null) prefs.sync();
     super.pause();
   }
   
@@ -104,8 +151,9 @@ public abstract class BureauGame extends Game {
    */
   @Override
   public void dispose() {
-    if (prefs!=null) prefs.flush();
+    if (prefs!=null) prefs.dispose();
     super.dispose();
+    if (profiler!=null) profiler.dispose();
     if (spriteBatch!=null) spriteBatch.dispose();
     if (assetManager!=null) assetManager.dispose();
   }
@@ -116,7 +164,7 @@ public abstract class BureauGame extends Game {
   protected void bootGame() {}
   
   /**
-   * Create the global preferences.
+   * Create the storage behind the global preferences.
    * @return a <code>Preferences</code> object that is linked to a persistent
    * storage or null if not desired. Default implementation returns null.
    */
@@ -140,18 +188,20 @@ public abstract class BureauGame extends Game {
   
   /**
    * Create the <code>assetManager</code>. Subclasses should override this method.
-   * @return Default implementation returns a manager with default loaders.
+   * @return Default implementation returns a manager with default loaders that resolves file
+   * names through the asset pipeline's manifest (see <code>ManifestResolver</code>).
    */
   protected AssetManager createAssetManager() {
-    return new AssetManager();
+    return new AssetManager(new ManifestResolver(Gdx.files.internal(ManifestResolver.FILENAME)));
   }
   
   /**
    * Create the <code>spriteBatch</code>. Subclasses should override this method.
-   * @return Default implementation returns a standard <code>SpriteBatch</code>
+   * @return Default implementation returns a <code>ProfilingSpriteBatch</code>, which behaves
+   * like a standard <code>SpriteBatch</code> while the <code>profiler</code> is hidden.
    */
   protected SpriteBatch createSpriteBatch() {
-    return new SpriteBatch();
+    return new ProfilingSpriteBatch();
   }
   
 }
\ No newline at end of file
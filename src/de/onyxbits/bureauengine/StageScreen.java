@@ -1,12 +1,22 @@
 package de.onyxbits.bureauengine.screen;
 
+import com.badlogic.gdx.scenes.scene2d.Actor;
+import com.badlogic.gdx.scenes.scene2d.Group;
 import com.badlogic.gdx.scenes.scene2d.Stage;
+import com.badlogic.gdx.utils.SnapshotArray;
 import com.badlogic.gdx.Gdx;
 import de.onyxbits.bureauengine.BureauGame;
+import de.onyxbits.bureauengine.debug.PhaseTimer;
 
 
 /**
- * A {@link BureauScreen} that has a stage object.
+ * A {@link BureauScreen} that has a stage object. Besides acting the stage once per frame,
+ * the screen runs a simulation at a fixed rate (see {@link #step}) for anything that must
+ * not depend on the frame rate.
+ * <p>
+ * Once nothing has been going on for <code>IDLETIME</code> seconds (see {@link #isAnimating}),
+ * the screen switches to non-continuous rendering, so an idle game does not drain the battery.
+ * Input wakes it up again. So does {@link #wakeUp}.
  */
 public abstract class StageScreen<T extends BureauGame> extends BureauScreen<T> {
 
@@ -15,6 +25,32 @@ public abstract class StageScreen<T extends BureauGame> extends BureauScreen<T>
    */
   protected Stage stage;
   
+  /**
+   * Length of a simulation step in seconds.
+   */
+  public static final float STEP = 1/60f;
+  
+  /**
+   * Longest frame time (in seconds) the simulation catches up on. Anything beyond (e.g. when
+   * the app was in the background) is dropped rather than simulated in one burst.
+   */
+  public static final float MAXFRAMETIME = 0.25f;
+  
+  /**
+   * Time that has not been simulated yet (always less than <code>STEP</code> after a frame).
+   */
+  private float accumulator;
+  
+  /**
+   * How long (in seconds) nothing must be going on before rendering stops.
+   */
+  public static final float IDLETIME = 1f;
+  
+  /**
+   * How long nothing has been going on
+   */
+  private float idleTime;
+  
     /**
    * Instantiate a new screen. Note: instantiation must usually happen fast and on the
    * UI thread (e.g. when the player hits an "exit" button). Put all your real construction
@@ -29,6 +65,7 @@ public abstract class StageScreen<T extends BureauGame> extends BureauScreen<T>
   public void show() {
     super.show();
     Gdx.input.setInputProcessor(stage);
+    wakeUp();
   }
   
   public void hide() {
@@ -36,13 +73,96 @@ public abstract class StageScreen<T extends BureauGame> extends BureauScreen<T>
     if (Gdx.input.getInputProcessor()==stage) {
       Gdx.input.setInputProcessor(null);
     }
+    // Whatever comes next expects to be rendered.
+    Gdx.graphics.setContinuousRendering(true);
   }
   
   @Override
   public void render(float delta) {
+    if (!Gdx.graphics.isContinuousRendering()) {
+      // Something (most likely input) woke us up. Give it time to start animating.
+      wakeUp();
+    }
+    PhaseTimer timer = game.phaseTimer;
+    long start = timer.start();
     super.render(delta);
+    timer.stop(this,PhaseTimer.BACKGROUND,start);
+    
+    start = timer.start();
+    accumulator+=Math.min(delta,MAXFRAMETIME);
+    while (accumulator>=STEP) {
+      step();
+      accumulator-=STEP;
+    }
+    timer.stop(this,PhaseTimer.STEP,start);
+    
+    start = timer.start();
     stage.act(delta);
+    timer.stop(this,PhaseTimer.ACT,start);
+    
+    start = timer.start();
     stage.draw();
+    timer.stop(this,PhaseTimer.DRAW,start);
+    
+    if (isAnimating()) {
+      idleTime=0;
+    }
+    else {
+      idleTime+=delta;
+      if (idleTime>=IDLETIME) Gdx.graphics.setContinuousRendering(false);
+    }
+  }
+  
+  /**
+   * Query whether there is anything going on that needs the screen to be rendered continuously.
+   * Subclasses that move things by other means than actions (e.g. in <code>step()</code> or
+   * <code>renderBackground()</code>) must override this method and call the super method.
+   * @return default implementation returns true while the screen is touched or any actor on
+   * the stage has actions.
+   */
+  protected boolean isAnimating() {
+    return Gdx.input.isTouched() || hasActions(stage.getRoot());
+  }
+  
+  /**
+   * Go back to continuous rendering (if rendering was stopped) for at least
+   * <code>IDLETIME</code> seconds. Call this when starting an animation that
+   * {@link #isAnimating} does not know about. Other threads should call
+   * <code>Gdx.graphics.requestRendering()</code> instead, which wakes the screen up as well.
+   */
+  public void wakeUp() {
+    idleTime=0;
+    Gdx.graphics.setContinuousRendering(true);
+    Gdx.graphics.requestRendering();
+  }
+  
+  /**
+   * Check an actor and its children for actions.
+   */
+  private static boolean hasActions(Actor actor) {
+    if (actor.getActions().size>0) return true;
+    if (actor instanceof Group) {
+      SnapshotArray<Actor> children = ((Group)actor).getChildren();
+      for (int i=0;i<children.size;i++) {
+        if (hasActions(children.get(i))) return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Advance the simulation by <code>STEP</code> seconds. Called zero or more times per frame,
+   * before the stage is acted and drawn. Default implementation does nothing.
+   */
+  protected void step() {}
+  
+  /**
+   * Query how far the next simulation step has progressed. Use this to draw in between two
+   * steps, so motion looks smooth when frame rate and step rate differ.
+   * @return a value between 0 (just stepped) and 1 (about to step).
+   */
+  public float getStepAlpha() {
+    return accumulator/STEP;
   }
   
   @Override
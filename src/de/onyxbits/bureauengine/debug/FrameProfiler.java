@@ -0,0 +1,186 @@
+package de.onyxbits.bureauengine.debug;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.StringBuilder;
+
+import java.util.Date;
+
+/**
+ * Shows what the <code>ProfilingSpriteBatch</code> counted in the last frame in an overlay and
+ * keeps track of the worst frames (by the time it took to render them). The worst frames are
+ * appended to a log file when the overlay is hidden and when the game is paused or disposed.
+ * <p>
+ * <code>BureauGame</code> calls <code>beginFrame()</code> and <code>endFrame()</code> around
+ * rendering the current screen. While the overlay is hidden, those return right away.
+ */
+public class FrameProfiler {
+
+  /**
+   * Where the log is kept (local storage).
+   */
+  public static final String LOGFILE = "frames.log";
+
+  /**
+   * How many frames to keep for the log
+   */
+  public static final int WORSTFRAMES = 10;
+
+  /**
+   * What is known about a frame.
+   */
+  private static class Frame {
+    float millis;
+    float delta;
+    String screen;
+    int calls, binds, flushes, sprites, vertices;
+  }
+
+  private ProfilingSpriteBatch batch;
+  private FileHandle log;
+  private boolean visible;
+
+  /**
+   * Worst frames first. Only the first <code>recorded</code> are meaningful.
+   */
+  private Frame[] worst = new Frame[WORSTFRAMES];
+  private int recorded;
+
+  private long frameStart;
+
+  /**
+   * Name of the screen that was rendered last (cached, so it is not looked up every frame).
+   */
+  private Screen screen;
+  private String screenName;
+
+  private BitmapFont font;
+  private StringBuilder text = new StringBuilder(256);
+  private Matrix4 projection = new Matrix4();
+  private Matrix4 oldProjection = new Matrix4();
+
+  /**
+   * Create a new profiler. The overlay is hidden.
+   * @param batch the batch that everything is drawn with.
+   * @param log where to write the worst frames to.
+   */
+  public FrameProfiler(ProfilingSpriteBatch batch, FileHandle log) {
+    this.batch=batch;
+    this.log=log;
+    for (int i=0;i<worst.length;i++) {
+      worst[i] = new Frame();
+    }
+  }
+
+  /**
+   * Show or hide the overlay. Hiding it writes the log.
+   * @param visible true to show and start counting.
+   */
+  public void setVisible(boolean visible) {
+    if (this.visible && !visible) writeLog();
+    this.visible=visible;
+    batch.setProfiling(visible);
+  }
+
+  /**
+   * Query the overlay
+   * @return true if showing (and counting).
+   */
+  public boolean isVisible() {
+    return visible;
+  }
+
+  /**
+   * Call before rendering the screen.
+   */
+  public void beginFrame() {
+    if (!visible) return;
+    batch.resetCounts();
+    frameStart=System.nanoTime();
+  }
+
+  /**
+   * Call after rendering the screen. Records the frame and draws the overlay.
+   * @param current the screen that was rendered.
+   */
+  public void endFrame(Screen current) {
+    if (!visible) return;
+    float millis = (System.nanoTime()-frameStart)/1000000f;
+    if (current!=screen) {
+      screen=current;
+      screenName= current==null ? "none" : current.getClass().getSimpleName();
+    }
+    record(millis);
+
+    text.setLength(0);
+    text.append(screenName).append(": ").append((int)(millis*1000)/1000f).append(" ms\n");
+    text.append("calls ").append(batch.calls).append("  binds ").append(batch.binds);
+    text.append("  flushes ").append(batch.flushes).append('\n');
+    text.append("sprites ").append(batch.sprites).append("  vertices ").append(batch.vertices);
+
+    // Don't count the overlay itself.
+    batch.setProfiling(false);
+    if (font==null) font = new BitmapFont();
+    oldProjection.set(batch.getProjectionMatrix());
+    batch.setProjectionMatrix(projection.setToOrtho2D(0,0,Gdx.graphics.getWidth(),Gdx.graphics.getHeight()));
+    batch.begin();
+    font.drawMultiLine(batch,text,4,Gdx.graphics.getHeight()-4);
+    batch.end();
+    batch.setProjectionMatrix(oldProjection);
+    batch.setProfiling(true);
+  }
+
+  /**
+   * Keep the frame if it is among the worst.
+   */
+  private void record(float millis) {
+    int pos = recorded;
+    while (pos>0 && worst[pos-1].millis<millis) pos--;
+    if (pos==WORSTFRAMES) return;
+    // Move everything below down (the last one drops out) and reuse the object.
+    Frame frame = worst[Math.min(recorded,WORSTFRAMES-1)];
+    System.arraycopy(worst,pos,worst,pos+1,Math.min(recorded,WORSTFRAMES-1)-pos);
+    worst[pos]=frame;
+    if (recorded<WORSTFRAMES) recorded++;
+
+    frame.millis=millis;
+    frame.delta=Gdx.graphics.getDeltaTime();
+    frame.screen=screenName;
+    frame.calls=batch.calls;
+    frame.binds=batch.binds;
+    frame.flushes=batch.flushes;
+    frame.sprites=batch.sprites;
+    frame.vertices=batch.vertices;
+  }
+
+  /**
+   * Append the worst frames (if any) to the log and start over.
+   */
+  public void writeLog() {
+    if (recorded==0) return;
+    java.lang.StringBuilder out = new java.lang.StringBuilder();
+    out.append("# ").append(new Date()).append('\n');
+    out.append("# ms delta screen calls binds flushes sprites vertices\n");
+    for (int i=0;i<recorded;i++) {
+      Frame f = worst[i];
+      out.append(f.millis).append(' ').append(f.delta).append(' ').append(f.screen).append(' ');
+      out.append(f.calls).append(' ').append(f.binds).append(' ').append(f.flushes).append(' ');
+      out.append(f.sprites).append(' ').append(f.vertices).append('\n');
+    }
+    try {
+      log.writeString(out.toString(),true);
+    }
+    catch (Exception e) {
+      Gdx.app.error("BureauEngine","Could not write "+log.path(),e);
+    }
+    recorded=0;
+  }
+
+  public void dispose() {
+    if (visible) writeLog();
+    if (font!=null) font.dispose();
+  }
+}
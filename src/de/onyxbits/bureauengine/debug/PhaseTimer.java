@@ -0,0 +1,208 @@
+package de.onyxbits.bureauengine.debug;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records how long the phases of a frame take, per screen class. The last <code>CAPACITY</code>
+ * samples of every phase are kept in a ring buffer, from which <code>report()</code> computes
+ * percentiles. Garbage collections are detected (and counted) once per frame with a weakly
+ * referenced sentinel object.
+ * <p>
+ * Timing a phase looks like this:
+ * <pre>
+ * long start = timer.start();
+ * doSomething();
+ * timer.stop(screen,PhaseTimer.SOMETHING,start);
+ * </pre>
+ * While the timer is disabled, both calls return after checking a single flag, so the
+ * instrumentation can stay in production builds.
+ */
+public class PhaseTimer {
+
+  /**
+   * Phase: everything the game does for a frame
+   */
+  public static final int FRAME = 0;
+
+  /**
+   * Phase: <code>BureauScreen.render()</code> (drawing the background)
+   */
+  public static final int BACKGROUND = 1;
+
+  /**
+   * Phase: running the fixed rate simulation of a <code>StageScreen</code>
+   */
+  public static final int STEP = 2;
+
+  /**
+   * Phase: <code>Stage.act()</code>
+   */
+  public static final int ACT = 3;
+
+  /**
+   * Phase: <code>Stage.draw()</code>
+   */
+  public static final int DRAW = 4;
+
+  /**
+   * Phase: loading assets and building a screen (in <code>FadeOverScreen</code>)
+   */
+  public static final int LOAD = 5;
+
+  private static final String[] PHASENAMES = {"frame","background","step","act","draw","load"};
+
+  /**
+   * How many samples to keep per phase and screen.
+   */
+  public static final int CAPACITY = 1024;
+
+  /**
+   * Where reports are appended to (local storage).
+   */
+  public static final String LOGFILE = "phases.log";
+
+  /**
+   * Name of the (boolean) preference that enables the timer on startup.
+   */
+  public static final String PREFKEY = "bureauengine.phasetimer";
+
+  /**
+   * The samples of a single screen
+   */
+  private static class Samples {
+    long[][] nanos = new long[PHASENAMES.length][CAPACITY];
+
+    /**
+     * Number of samples ever taken (per phase). Only the last <code>CAPACITY</code> are kept.
+     */
+    int[] count = new int[PHASENAMES.length];
+
+    /**
+     * Number of frames during which the garbage collector ran
+     */
+    int collections;
+  }
+
+  private boolean enabled;
+
+  private HashMap<Class<?>,Samples> screens = new HashMap<Class<?>,Samples>();
+
+  /**
+   * The screen that was timed last along with its samples (saves a lookup most of the time).
+   */
+  private Class<?> lastScreen;
+  private Samples lastSamples;
+
+  /**
+   * Cleared by the garbage collector
+   */
+  private WeakReference<Object> sentinel = new WeakReference<Object>(new Object());
+
+  /**
+   * Turn timing on or off. Samples taken so far are kept.
+   * @param enabled true to time.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled=enabled;
+  }
+
+  /**
+   * Query the timer
+   * @return true if timing.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Start timing a phase
+   * @return the time to pass to <code>stop()</code>.
+   */
+  public long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Record a phase.
+   * @param screen the screen the phase belongs to. Samples are kept by its class.
+   * @param phase which phase (one of the constants of this class).
+   * @param start what <code>start()</code> returned.
+   */
+  public void stop(Object screen, int phase, long start) {
+    if (!enabled) return;
+    long nanos = System.nanoTime()-start;
+    Samples samples = samples(screen==null ? Object.class : screen.getClass());
+    samples.nanos[phase][samples.count[phase]%CAPACITY]=nanos;
+    samples.count[phase]++;
+    if (phase==FRAME && sentinel.get()==null) {
+      samples.collections++;
+      sentinel = new WeakReference<Object>(new Object());
+    }
+  }
+
+  private Samples samples(Class<?> screen) {
+    if (screen!=lastScreen) {
+      lastSamples=screens.get(screen);
+      if (lastSamples==null) {
+        lastSamples = new Samples();
+        screens.put(screen,lastSamples);
+      }
+      lastScreen=screen;
+    }
+    return lastSamples;
+  }
+
+  /**
+   * Summarize the samples
+   * @return a human readable table of percentiles (in milliseconds) per screen and phase.
+   */
+  public String report() {
+    StringBuilder ret = new StringBuilder();
+    long[] sorted = new long[CAPACITY];
+    for (Map.Entry<Class<?>,Samples> e: screens.entrySet()) {
+      Samples samples = e.getValue();
+      ret.append(e.getKey().getSimpleName()).append(" (frames with GC: ").append(samples.collections).append(")\n");
+      ret.append(String.format(Locale.US,"  %-10s %8s %8s %8s %8s %8s\n","phase","samples","p50","p95","p99","max"));
+      for (int phase=0;phase<PHASENAMES.length;phase++) {
+        int n = Math.min(samples.count[phase],CAPACITY);
+        if (n==0) continue;
+        System.arraycopy(samples.nanos[phase],0,sorted,0,n);
+        Arrays.sort(sorted,0,n);
+        ret.append(String.format(Locale.US,"  %-10s %8d %8.3f %8.3f %8.3f %8.3f\n",PHASENAMES[phase],samples.count[phase],
+          percentile(sorted,n,50),percentile(sorted,n,95),percentile(sorted,n,99),sorted[n-1]/1000000f));
+      }
+    }
+    return ret.toString();
+  }
+
+  /**
+   * Nearest rank percentile
+   * @return milliseconds
+   */
+  private static float percentile(long[] sorted, int n, int p) {
+    int rank = (int)Math.ceil(p/100.0*n);
+    return sorted[Math.max(rank-1,0)]/1000000f;
+  }
+
+  /**
+   * Append a report to a file. Does nothing if there are no samples.
+   * @param file where to write to.
+   */
+  public void writeReport(FileHandle file) {
+    if (screens.isEmpty()) return;
+    try {
+      file.writeString("# "+new Date()+"\n"+report(),true);
+    }
+    catch (Exception e) {
+      Gdx.app.error("BureauEngine","Could not write "+file.path(),e);
+    }
+  }
+}
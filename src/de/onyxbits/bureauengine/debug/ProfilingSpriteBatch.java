@@ -0,0 +1,215 @@
+package de.onyxbits.bureauengine.debug;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+
+/**
+ * A <code>SpriteBatch</code> that keeps count of what it does. While profiling is off, it
+ * behaves just like a standard <code>SpriteBatch</code> (plus a flag check per draw call).
+ * Counters are summed up until <code>resetCounts()</code> is called, so they can span several
+ * <code>begin()</code>/<code>end()</code> pairs (e.g. a whole frame).
+ */
+public class ProfilingSpriteBatch extends SpriteBatch {
+
+  /**
+   * Number of draw calls sent to the GPU
+   */
+  public int calls;
+
+  /**
+   * Number of times a different texture had to be bound
+   */
+  public int binds;
+
+  /**
+   * Number of times <code>flush()</code> was called (e.g. by a scissor test or a transform)
+   */
+  public int flushes;
+
+  /**
+   * Number of sprites (quads) drawn
+   */
+  public int sprites;
+
+  /**
+   * Number of vertices drawn
+   */
+  public int vertices;
+
+  private boolean profiling;
+
+  /**
+   * The texture the batch is drawing with. Null right after <code>begin()</code>.
+   */
+  private Texture current;
+
+  /**
+   * Set while inside one of the <code>draw()</code> methods (some delegate to others, which must
+   * not be counted twice).
+   */
+  private boolean inDraw;
+
+  public ProfilingSpriteBatch() {
+    super();
+  }
+
+  /**
+   * @param size the maximum number of sprites in a single draw call.
+   */
+  public ProfilingSpriteBatch(int size) {
+    super(size);
+  }
+
+  /**
+   * Turn counting on or off. Counters are reset either way.
+   * @param profiling true to count.
+   */
+  public void setProfiling(boolean profiling) {
+    this.profiling=profiling;
+    resetCounts();
+  }
+
+  /**
+   * Query if counting
+   * @return true if counting
+   */
+  public boolean isProfiling() {
+    return profiling;
+  }
+
+  /**
+   * Set all counters to 0
+   */
+  public void resetCounts() {
+    calls=0;
+    binds=0;
+    flushes=0;
+    sprites=0;
+    vertices=0;
+  }
+
+  /**
+   * Count a draw. Must be paired with <code>leave()</code>.
+   * @return true if this is the outermost draw.
+   */
+  private boolean enter(Texture texture, int quads) {
+    if (inDraw) return false;
+    inDraw=true;
+    if (profiling) {
+      if (texture!=current) {
+        binds++;
+        current=texture;
+      }
+      sprites+=quads;
+      vertices+=quads*4;
+    }
+    return true;
+  }
+
+  private void leave(boolean outer) {
+    if (outer) inDraw=false;
+  }
+
+  @Override
+  public void begin() {
+    super.begin();
+    current=null;
+    inDraw=false;
+  }
+
+  @Override
+  public void end() {
+    super.end();
+    // The batch resets renderCalls on begin()
+    if (profiling) calls+=renderCalls;
+  }
+
+  @Override
+  public void flush() {
+    if (profiling) flushes++;
+    super.flush();
+  }
+
+  @Override
+  public void draw(Texture texture, float x, float y, float originX, float originY, float width, float height,
+      float scaleX, float scaleY, float rotation, int srcX, int srcY, int srcWidth, int srcHeight, boolean flipX, boolean flipY) {
+    boolean outer = enter(texture,1);
+    super.draw(texture,x,y,originX,originY,width,height,scaleX,scaleY,rotation,srcX,srcY,srcWidth,srcHeight,flipX,flipY);
+    leave(outer);
+  }
+
+  @Override
+  public void draw(Texture texture, float x, float y, float width, float height, int srcX, int srcY, int srcWidth,
+      int srcHeight, boolean flipX, boolean flipY) {
+    boolean outer = enter(texture,1);
+    super.draw(texture,x,y,width,height,srcX,srcY,srcWidth,srcHeight,flipX,flipY);
+    leave(outer);
+  }
+
+  @Override
+  public void draw(Texture texture, float x, float y, int srcX, int srcY, int srcWidth, int srcHeight) {
+    boolean outer = enter(texture,1);
+    super.draw(texture,x,y,srcX,srcY,srcWidth,srcHeight);
+    leave(outer);
+  }
+
+  @Override
+  public void draw(Texture texture, float x, float y, float width, float height, float u, float v, float u2, float v2) {
+    boolean outer = enter(texture,1);
+    super.draw(texture,x,y,width,height,u,v,u2,v2);
+    leave(outer);
+  }
+
+  @Override
+  public void draw(Texture texture, float x, float y) {
+    boolean outer = enter(texture,1);
+    super.draw(texture,x,y);
+    leave(outer);
+  }
+
+  @Override
+  public void draw(Texture texture, float x, float y, float width, float height) {
+    boolean outer = enter(texture,1);
+    super.draw(texture,x,y,width,height);
+    leave(outer);
+  }
+
+  @Override
+  public void draw(Texture texture, float[] spriteVertices, int offset, int length) {
+    // 4 vertices of 5 floats each per sprite.
+    boolean outer = enter(texture,length/20);
+    super.draw(texture,spriteVertices,offset,length);
+    leave(outer);
+  }
+
+  @Override
+  public void draw(TextureRegion region, float x, float y) {
+    boolean outer = enter(region.getTexture(),1);
+    super.draw(region,x,y);
+    leave(outer);
+  }
+
+  @Override
+  public void draw(TextureRegion region, float x, float y, float width, float height) {
+    boolean outer = enter(region.getTexture(),1);
+    super.draw(region,x,y,width,height);
+    leave(outer);
+  }
+
+  @Override
+  public void draw(TextureRegion region, float x, float y, float originX, float originY, float width, float height,
+      float scaleX, float scaleY, float rotation) {
+    boolean outer = enter(region.getTexture(),1);
+    super.draw(region,x,y,originX,originY,width,height,scaleX,scaleY,rotation);
+    leave(outer);
+  }
+
+  @Override
+  public void draw(TextureRegion region, float x, float y, float originX, float originY, float width, float height,
+      float scaleX, float scaleY, float rotation, boolean clockwise) {
+    boolean outer = enter(region.getTexture(),1);
+    super.draw(region,x,y,originX,originY,width,height,scaleX,scaleY,rotation,clockwise);
+    leave(outer);
+  }
+}
@@ -10,6 +10,7 @@ import com.badlogic.gdx.audio.Music;
 import com.badlogic.gdx.graphics.Texture;
 
 import de.onyxbits.bureauengine.BureauGame;
+import de.onyxbits.bureauengine.debug.PhaseTimer;
 
 /**
  * Implements a fading over effect between two screens (fade to black, fade from black). Note:
@@ -80,6 +81,8 @@ public class FadeOverScreen implements Screen {
     fadePercent=0;
     fadeTime=0;
     Gdx.input.setInputProcessor(null);
+    // The screen we are coming from may have stopped rendering.
+    Gdx.graphics.setContinuousRendering(true);
     game.setScreen(this);
   }
   
@@ -101,8 +104,10 @@ public class FadeOverScreen implements Screen {
         if ((fromScreen instanceof BureauScreen) && ((BureauScreen)fromScreen).music!=null) {
           ((BureauScreen)fromScreen).music.stop();
         }
+        long start = game.phaseTimer.start();
         toScreen.prepareAssets(true); 
         toScreen.readyScreen();
+        game.phaseTimer.stop(toScreen,PhaseTimer.LOAD,start);
         if (toScreen.music!=null) {
           toScreen.music.setVolume(0);
           if (!game.muteManager.isMusicMuted()) toScreen.music.play();
@@ -0,0 +1,142 @@
+package de.onyxbits.bureauengine.screen;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Matrix4;
+
+/**
+ * Covers whatever a camera sees with a tile. The tiles are put into a <code>SpriteCache</code>
+ * once, so drawing the background is a single draw call without any per frame vertex work.
+ * The cache is only rebuilt if the area the camera sees changes. Scrolling is done by moving
+ * the whole cache with a transform, so it does not cause a rebuild either.
+ * <p>
+ * Meant to be drawn in <code>BureauScreen.renderBackground()</code> with the stage's camera,
+ * so the background lines up with the stage, no matter how the stage's virtual size maps to
+ * the physical screen.
+ */
+public class TiledBackground {
+
+  private TextureRegion tile;
+
+  /**
+   * Any tile's lower left corner (the grid is aligned to this point)
+   */
+  private float originX, originY;
+
+  private SpriteCache cache;
+
+  /**
+   * Number of tiles <code>cache</code> can hold
+   */
+  private int capacity;
+
+  /**
+   * Id of the cached tiles or -1 if there are none.
+   */
+  private int cacheId=-1;
+
+  /**
+   * The area that is currently covered by the cache.
+   */
+  private float left, bottom, right, top;
+
+  /**
+   * How far the tiles are scrolled (always less than a tile)
+   */
+  private float scrollX, scrollY;
+
+  private Matrix4 transform = new Matrix4();
+
+  /**
+   * Create a new background
+   * @param tile what to cover the background with.
+   * @param originX x coordinate of any tile's lower left corner.
+   * @param originY y coordinate of any tile's lower left corner.
+   */
+  public TiledBackground(TextureRegion tile, float originX, float originY) {
+    this.tile=tile;
+    this.originX=originX;
+    this.originY=originY;
+  }
+
+  /**
+   * Scroll the tiles. Since the tiles repeat, only the distance modulo the tile size matters.
+   * @param x how far to scroll to the right
+   * @param y how far to scroll up
+   */
+  public void setScroll(float x, float y) {
+    int tw = tile.getRegionWidth();
+    int th = tile.getRegionHeight();
+    scrollX = ((x % tw)+tw) % tw;
+    scrollY = ((y % th)+th) % th;
+  }
+
+  /**
+   * Scroll the tiles relative to where they are now.
+   * @param x how far to scroll to the right
+   * @param y how far to scroll up
+   */
+  public void scrollBy(float x, float y) {
+    setScroll(scrollX+x,scrollY+y);
+  }
+
+  /**
+   * Draw the background. Must not be called between <code>SpriteBatch.begin()</code> and
+   * <code>SpriteBatch.end()</code>.
+   * @param camera the camera to draw with (usually the stage's).
+   */
+  public void draw(Camera camera) {
+    float zoom = (camera instanceof OrthographicCamera) ? ((OrthographicCamera)camera).zoom : 1;
+    float w = camera.viewportWidth*zoom/2;
+    float h = camera.viewportHeight*zoom/2;
+    // The tiles get moved by the scroll distance, so they must cover what the camera sees
+    // moved the other way.
+    cover(camera.position.x-w-scrollX,camera.position.y-h-scrollY,camera.position.x+w-scrollX,camera.position.y+h-scrollY);
+
+    cache.setProjectionMatrix(camera.combined);
+    cache.setTransformMatrix(transform.setToTranslation(scrollX,scrollY,0));
+    cache.begin();
+    cache.draw(cacheId);
+    cache.end();
+  }
+
+  /**
+   * Make sure, the cache covers an area.
+   */
+  private void cover(float l, float b, float r, float t) {
+    if (cacheId!=-1 && l>=left && b>=bottom && r<=right && t<=top) return;
+
+    int tw = tile.getRegionWidth();
+    int th = tile.getRegionHeight();
+    // Snap to the tile grid.
+    left = originX+(float)Math.floor((l-originX)/tw)*tw;
+    bottom = originY+(float)Math.floor((b-originY)/th)*th;
+    right = originX+(float)Math.ceil((r-originX)/tw)*tw;
+    top = originY+(float)Math.ceil((t-originY)/th)*th;
+
+    int needed = Math.round((right-left)/tw)*Math.round((top-bottom)/th);
+    if (cache==null || needed>capacity) {
+      if (cache!=null) cache.dispose();
+      capacity=needed;
+      cache = new SpriteCache(capacity,false);
+    }
+    else {
+      cache.clear();
+    }
+    cache.beginCache();
+    for (float x=left;x<right;x+=tw) {
+      for (float y=bottom;y<top;y+=th) {
+        cache.add(tile,x,y);
+      }
+    }
+    cacheId=cache.endCache();
+  }
+
+  public void dispose() {
+    if (cache!=null) cache.dispose();
+    cache=null;
+    cacheId=-1;
+  }
+}
@@ -0,0 +1,438 @@
+package de.onyxbits.bureauengine.state;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Preferences;
+import com.badlogic.gdx.files.FileHandle;
+
+/**
+ * A compact, binary key/value store that can be used in place of the platform's
+ * <code>Preferences</code>. All values are held in memory. <code>flush()</code> appends
+ * only the keys that changed since the last flush to a log file, so its cost does not
+ * grow with the total number of keys. Once the log holds a lot of outdated records, it
+ * is compacted: the live values are written to a new file, which is then renamed over
+ * the log.
+ * <p>
+ * Every record carries its length and a checksum. A record that was only partially written
+ * (e.g. because the process died while flushing) is detected as such. Loading stops there,
+ * and the next flush rewrites the log instead of appending after the broken record. A log
+ * that can not be read at all is treated like a missing one.
+ */
+public class LogPreferences implements Preferences {
+
+  private static final int MAGIC = 0x42454b56;
+  private static final int VERSION = 1;
+
+  /**
+   * Size of the header (magic and version)
+   */
+  private static final int HEADERSIZE = 8;
+
+  /**
+   * Size of a record's length and checksum
+   */
+  private static final int FRAMESIZE = 8;
+
+  private static final byte TYPEREMOVED = 0;
+  private static final byte TYPEBOOLEAN = 1;
+  private static final byte TYPEINTEGER = 2;
+  private static final byte TYPELONG = 3;
+  private static final byte TYPEFLOAT = 4;
+  private static final byte TYPESTRING = 5;
+
+  /**
+   * Marks a removed key in <code>dirty</code>
+   */
+  private static final Object REMOVED = new Object();
+
+  /**
+   * Where the log is kept
+   */
+  private FileHandle file;
+
+  /**
+   * The live values
+   */
+  private HashMap<String,Object> values = new HashMap<String,Object>();
+
+  /**
+   * Keys that changed since the last flush along with their new value (or <code>REMOVED</code>)
+   */
+  private LinkedHashMap<String,Object> dirty = new LinkedHashMap<String,Object>();
+
+  /**
+   * Number of records in the log file
+   */
+  private int records;
+
+  /**
+   * True if there was no (readable) log file when this object was created.
+   */
+  private boolean fresh;
+
+  /**
+   * True if the log file ends with something else than a complete record. It must be
+   * rewritten before anything can be appended.
+   */
+  private boolean torn;
+
+  /**
+   * Open (or create) a store
+   * @param file the log file. Must be a local or external file.
+   */
+  public LogPreferences(FileHandle file) {
+    this.file=file;
+    fresh=!file.exists();
+    if (!fresh) {
+      try {
+        load();
+      }
+      catch (Exception e) {
+        // Start over, just as if there was no log. The next flush replaces the file.
+        Gdx.app.error("BureauEngine","Could not read "+file.path(),e);
+        values.clear();
+        records=0;
+        fresh=true;
+      }
+    }
+  }
+
+  /**
+   * Check whether the store was just created (e.g. to migrate data from another storage).
+   * @return true if there was no (readable) log file on disk when this object was created.
+   */
+  public boolean isFresh() {
+    return fresh;
+  }
+
+  /**
+   * Read the log and replay it
+   */
+  private void load() throws IOException {
+    byte[] data = file.readBytes();
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    if (in.readInt()!=MAGIC) throw new IOException("Not a key/value log");
+    int version = in.readInt();
+    if (version!=VERSION) throw new IOException("Unsupported log version "+version);
+    CRC32 crc = new CRC32();
+    int pos = HEADERSIZE;
+    while (pos<data.length) {
+      if (data.length-pos<FRAMESIZE) break;
+      in.reset();
+      in.skip(pos);
+      int length = in.readInt();
+      long checksum = in.readInt() & 0xffffffffL;
+      if (length<=0 || length>data.length-pos-FRAMESIZE) break;
+      crc.reset();
+      crc.update(data,pos+FRAMESIZE,length);
+      if (crc.getValue()!=checksum) break;
+      if (!readRecord(in)) break;
+      records++;
+      pos+=FRAMESIZE+length;
+    }
+    // Anything after the last complete record did not make it to disk properly.
+    torn = pos<data.length;
+  }
+
+  /**
+   * Read a single record (without its frame) and apply it.
+   * @return false if the record is of an unknown type.
+   */
+  private boolean readRecord(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    String key = in.readUTF();
+    switch (type) {
+      case TYPEREMOVED: {
+        values.remove(key);
+        return true;
+      }
+      case TYPEBOOLEAN: {
+        values.put(key,in.readBoolean());
+        return true;
+      }
+      case TYPEINTEGER: {
+        values.put(key,in.readInt());
+        return true;
+      }
+      case TYPELONG: {
+        values.put(key,in.readLong());
+        return true;
+      }
+      case TYPEFLOAT: {
+        values.put(key,in.readFloat());
+        return true;
+      }
+      case TYPESTRING: {
+        values.put(key,in.readUTF());
+        return true;
+      }
+      default: {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Write the changes since the last flush to disk
+   */
+  @Override
+  public synchronized void flush() {
+    if (dirty.isEmpty()) return;
+    try {
+      if (fresh || torn || records+dirty.size()>2*values.size()+32) {
+        compact();
+      }
+      else {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(dirty.size()*32);
+        DataOutputStream out = new DataOutputStream(bos);
+        for (Map.Entry<String,Object> e: dirty.entrySet()) {
+          writeRecord(out,e.getKey(),e.getValue());
+        }
+        out.close();
+        file.writeBytes(bos.toByteArray(),true);
+        records+=dirty.size();
+      }
+      dirty.clear();
+    }
+    catch (Exception e) {
+      // An append may have stopped halfway. Rewrite the whole log next time instead of adding
+      // to a file that might end in a partial record.
+      torn=true;
+      Gdx.app.error("BureauEngine","Could not write "+file.path(),e);
+    }
+  }
+
+  /**
+   * Replace the log with one that only contains the live values.
+   */
+  private void compact() throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(64+values.size()*32);
+    DataOutputStream out = new DataOutputStream(bos);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    for (Map.Entry<String,Object> e: values.entrySet()) {
+      writeRecord(out,e.getKey(),e.getValue());
+    }
+    out.close();
+    writeAtomically(file,bos.toByteArray());
+    records=values.size();
+    fresh=false;
+    torn=false;
+  }
+
+  /**
+   * Replace the contents of a file by writing to a temporary file first and then renaming it.
+   * @param file the file to write. Must be a local or external file.
+   * @param data the new contents
+   * @throws IOException if writing fails.
+   */
+  private static void writeAtomically(FileHandle file, byte[] data) throws IOException {
+    FileHandle tmp = file.sibling(file.name()+".tmp");
+    tmp.writeBytes(data,false);
+    File dest = file.file();
+    if (!tmp.file().renameTo(dest)) {
+      // Not all platforms replace on rename.
+      dest.delete();
+      if (!tmp.file().renameTo(dest)) throw new IOException("Could not rename "+tmp.path());
+    }
+  }
+
+  /**
+   * Write a record along with its length and checksum
+   */
+  private static void writeRecord(DataOutputStream out, String key, Object value) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(32);
+    DataOutputStream payload = new DataOutputStream(bos);
+    writePayload(payload,key,value);
+    payload.close();
+    byte[] data = bos.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    out.writeInt(data.length);
+    out.writeInt((int)crc.getValue());
+    out.write(data);
+  }
+
+  private static void writePayload(DataOutputStream out, String key, Object value) throws IOException {
+    if (value==REMOVED) {
+      out.writeByte(TYPEREMOVED);
+      out.writeUTF(key);
+    }
+    else if (value instanceof Boolean) {
+      out.writeByte(TYPEBOOLEAN);
+      out.writeUTF(key);
+      out.writeBoolean((Boolean)value);
+    }
+    else if (value instanceof Integer) {
+      out.writeByte(TYPEINTEGER);
+      out.writeUTF(key);
+      out.writeInt((Integer)value);
+    }
+    else if (value instanceof Long) {
+      out.writeByte(TYPELONG);
+      out.writeUTF(key);
+      out.writeLong((Long)value);
+    }
+    else if (value instanceof Float) {
+      out.writeByte(TYPEFLOAT);
+      out.writeUTF(key);
+      out.writeFloat((Float)value);
+    }
+    else {
+      out.writeByte(TYPESTRING);
+      out.writeUTF(key);
+      out.writeUTF(String.valueOf(value));
+    }
+  }
+
+  private synchronized void change(String key, Object value) {
+    if (value==REMOVED) {
+      if (values.remove(key)==null) return;
+    }
+    else {
+      if (value.equals(values.put(key,value))) return;
+    }
+    dirty.put(key,value);
+  }
+
+  private synchronized Object lookup(String key) {
+    return values.get(key);
+  }
+
+  @Override
+  public void putBoolean(String key, boolean val) {
+    change(key,val);
+  }
+
+  @Override
+  public void putInteger(String key, int val) {
+    change(key,val);
+  }
+
+  @Override
+  public void putLong(String key, long val) {
+    change(key,val);
+  }
+
+  @Override
+  public void putFloat(String key, float val) {
+    change(key,val);
+  }
+
+  @Override
+  public void putString(String key, String val) {
+    change(key,val);
+  }
+
+  @Override
+  public void put(Map<String,?> vals) {
+    for (Map.Entry<String,?> e: vals.entrySet()) {
+      Object value = e.getValue();
+      if (value instanceof Boolean || value instanceof Integer || value instanceof Long || value instanceof Float) {
+        change(e.getKey(),value);
+      }
+      else {
+        change(e.getKey(),String.valueOf(value));
+      }
+    }
+  }
+
+  @Override
+  public boolean getBoolean(String key) {
+    return getBoolean(key,false);
+  }
+
+  @Override
+  public int getInteger(String key) {
+    return getInteger(key,0);
+  }
+
+  @Override
+  public long getLong(String key) {
+    return getLong(key,0);
+  }
+
+  @Override
+  public float getFloat(String key) {
+    return getFloat(key,0);
+  }
+
+  @Override
+  public String getString(String key) {
+    return getString(key,"");
+  }
+
+  // Values migrated from other storages may come in as strings, so the getters convert.
+
+  @Override
+  public boolean getBoolean(String key, boolean defValue) {
+    Object v = lookup(key);
+    if (v==null) return defValue;
+    if (v instanceof Boolean) return (Boolean)v;
+    return Boolean.parseBoolean(v.toString());
+  }
+
+  @Override
+  public int getInteger(String key, int defValue) {
+    Object v = lookup(key);
+    if (v==null) return defValue;
+    if (v instanceof Number) return ((Number)v).intValue();
+    return Integer.parseInt(v.toString());
+  }
+
+  @Override
+  public long getLong(String key, long defValue) {
+    Object v = lookup(key);
+    if (v==null) return defValue;
+    if (v instanceof Number) return ((Number)v).longValue();
+    return Long.parseLong(v.toString());
+  }
+
+  @Override
+  public float getFloat(String key, float defValue) {
+    Object v = lookup(key);
+    if (v==null) return defValue;
+    if (v instanceof Number) return ((Number)v).floatValue();
+    return Float.parseFloat(v.toString());
+  }
+
+  @Override
+  public String getString(String key, String defValue) {
+    Object v = lookup(key);
+    if (v==null) return defValue;
+    return v.toString();
+  }
+
+  @Override
+  public synchronized Map<String,?> get() {
+    return new HashMap<String,Object>(values);
+  }
+
+  @Override
+  public boolean contains(String key) {
+    return lookup(key)!=null;
+  }
+
+  @Override
+  public synchronized void clear() {
+    for (String key: values.keySet()) {
+      dirty.put(key,REMOVED);
+    }
+    values.clear();
+  }
+
+  @Override
+  public void remove(String key) {
+    change(key,REMOVED);
+  }
+}
@@ -0,0 +1,300 @@
+package de.onyxbits.bureauengine.state;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Preferences;
+
+/**
+ * Takes disk I/O off the rendering thread. The service sits in front of a
+ * <code>Preferences</code> object and buffers all changes in memory. Reads see buffered
+ * changes right away. <code>flush()</code> does not write anything itself. It schedules a
+ * background write within a bounded delay, and further changes made in the meantime are
+ * coalesced into that write. <code>sync()</code> is the barrier for when the data really
+ * has to be on disk (e.g. when the game is paused).
+ * <p>
+ * Only the background thread ever touches the backing storage for writing.
+ */
+public class PersistenceService implements Preferences {
+
+  /**
+   * Marks a removed key in <code>pending</code>
+   */
+  private static final Object REMOVED = new Object();
+
+  /**
+   * Where the data ends up.
+   */
+  private Preferences backing;
+
+  /**
+   * Changes that have not been handed to the background thread yet. Guarded by <code>this</code>.
+   */
+  private HashMap<String,Object> pending = new HashMap<String,Object>();
+
+  /**
+   * Changes the background thread is currently writing (still visible to reads until they
+   * are flushed). Guarded by <code>this</code>.
+   */
+  private HashMap<String,Object> inFlight = new HashMap<String,Object>();
+
+  /**
+   * Whether a background write is already scheduled. Guarded by <code>this</code>.
+   */
+  private boolean scheduled;
+
+  /**
+   * Maximum time in milliseconds between <code>flush()</code> and the data hitting the disk.
+   */
+  private long latency;
+
+  private ScheduledExecutorService worker;
+
+  private Runnable drainTask = new Runnable() {
+    public void run() {
+      drain();
+    }
+  };
+
+  /**
+   * Create a new service
+   * @param backing the storage to write to.
+   * @param latency maximum time in milliseconds a <code>flush()</code> may be delayed (changes
+   * made within that time are written together).
+   */
+  public PersistenceService(Preferences backing, long latency) {
+    if (backing==null) throw new NullPointerException();
+    this.backing=backing;
+    this.latency=latency;
+    worker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread ret = new Thread(r,"BureauEngine-Persistence");
+        ret.setDaemon(true);
+        ret.setPriority(Thread.MIN_PRIORITY);
+        return ret;
+      }
+    });
+  }
+
+  /**
+   * Schedule writing all changes. Returns immediately.
+   */
+  @Override
+  public synchronized void flush() {
+    if (scheduled || pending.isEmpty()) return;
+    scheduled=true;
+    worker.schedule(drainTask,latency,TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Write all changes and wait till they are on disk.
+   */
+  public void sync() {
+    try {
+      worker.submit(drainTask).get();
+    }
+    catch (Exception e) {
+      Gdx.app.error("BureauEngine","Could not sync preferences",e);
+    }
+  }
+
+  /**
+   * Write all changes and stop the background thread. The service may not be used afterwards.
+   */
+  public void dispose() {
+    sync();
+    worker.shutdown();
+  }
+
+  /**
+   * Hand the pending changes to the backing storage. Runs on the background thread.
+   */
+  private void drain() {
+    synchronized(this) {
+      scheduled=false;
+      if (pending.isEmpty()) return;
+      HashMap<String,Object> tmp = inFlight;
+      inFlight=pending;
+      pending=tmp;
+    }
+    for (Map.Entry<String,Object> e: inFlight.entrySet()) {
+      String key = e.getKey();
+      Object value = e.getValue();
+      if (value==REMOVED) backing.remove(key);
+      else if (value instanceof Boolean) backing.putBoolean(key,(Boolean)value);
+      else if (value instanceof Integer) backing.putInteger(key,(Integer)value);
+      else if (value instanceof Long) backing.putLong(key,(Long)value);
+      else if (value instanceof Float) backing.putFloat(key,(Float)value);
+      else backing.putString(key,(String)value);
+    }
+    try {
+      backing.flush();
+    }
+    finally {
+      synchronized(this) {
+        inFlight.clear();
+      }
+    }
+  }
+
+  private synchronized void change(String key, Object value) {
+    pending.put(key,value);
+  }
+
+  /**
+   * Look up a buffered value
+   * @param key key in question
+   * @return the buffered value, <code>REMOVED</code> or null if there is no buffered change.
+   */
+  private synchronized Object lookup(String key) {
+    Object ret = pending.get(key);
+    if (ret==null) ret=inFlight.get(key);
+    return ret;
+  }
+
+  @Override
+  public void putBoolean(String key, boolean val) {
+    change(key,val);
+  }
+
+  @Override
+  public void putInteger(String key, int val) {
+    change(key,val);
+  }
+
+  @Override
+  public void putLong(String key, long val) {
+    change(key,val);
+  }
+
+  @Override
+  public void putFloat(String key, float val) {
+    change(key,val);
+  }
+
+  @Override
+  public void putString(String key, String val) {
+    change(key,val);
+  }
+
+  @Override
+  public void put(Map<String,?> vals) {
+    for (Map.Entry<String,?> e: vals.entrySet()) {
+      Object value = e.getValue();
+      if (value instanceof Boolean || value instanceof Integer || value instanceof Long || value instanceof Float) {
+        change(e.getKey(),value);
+      }
+      else {
+        change(e.getKey(),String.valueOf(value));
+      }
+    }
+  }
+
+  @Override
+  public boolean getBoolean(String key) {
+    return getBoolean(key,false);
+  }
+
+  @Override
+  public int getInteger(String key) {
+    return getInteger(key,0);
+  }
+
+  @Override
+  public long getLong(String key) {
+    return getLong(key,0);
+  }
+
+  @Override
+  public float getFloat(String key) {
+    return getFloat(key,0);
+  }
+
+  @Override
+  public String getString(String key) {
+    return getString(key,"");
+  }
+
+  @Override
+  public boolean getBoolean(String key, boolean defValue) {
+    Object v = lookup(key);
+    if (v==REMOVED) return defValue;
+    if (v instanceof Boolean) return (Boolean)v;
+    if (v!=null) return Boolean.parseBoolean(v.toString());
+    return backing.getBoolean(key,defValue);
+  }
+
+  @Override
+  public int getInteger(String key, int defValue) {
+    Object v = lookup(key);
+    if (v==REMOVED) return defValue;
+    if (v instanceof Number) return ((Number)v).intValue();
+    if (v!=null) return Integer.parseInt(v.toString());
+    return backing.getInteger(key,defValue);
+  }
+
+  @Override
+  public long getLong(String key, long defValue) {
+    Object v = lookup(key);
+    if (v==REMOVED) return defValue;
+    if (v instanceof Number) return ((Number)v).longValue();
+    if (v!=null) return Long.parseLong(v.toString());
+    return backing.getLong(key,defValue);
+  }
+
+  @Override
+  public float getFloat(String key, float defValue) {
+    Object v = lookup(key);
+    if (v==REMOVED) return defValue;
+    if (v instanceof Number) return ((Number)v).floatValue();
+    if (v!=null) return Float.parseFloat(v.toString());
+    return backing.getFloat(key,defValue);
+  }
+
+  @Override
+  public String getString(String key, String defValue) {
+    Object v = lookup(key);
+    if (v==REMOVED) return defValue;
+    if (v!=null) return v.toString();
+    return backing.getString(key,defValue);
+  }
+
+  @Override
+  public synchronized Map<String,?> get() {
+    HashMap<String,Object> ret = new HashMap<String,Object>(backing.get());
+    merge(ret,inFlight);
+    merge(ret,pending);
+    return ret;
+  }
+
+  private static void merge(HashMap<String,Object> dest, HashMap<String,Object> changes) {
+    for (Map.Entry<String,Object> e: changes.entrySet()) {
+      if (e.getValue()==REMOVED) dest.remove(e.getKey());
+      else dest.put(e.getKey(),e.getValue());
+    }
+  }
+
+  @Override
+  public boolean contains(String key) {
+    Object v = lookup(key);
+    if (v!=null) return v!=REMOVED;
+    return backing.contains(key);
+  }
+
+  @Override
+  public synchronized void clear() {
+    for (String key: get().keySet()) {
+      pending.put(key,REMOVED);
+    }
+  }
+
+  @Override
+  public void remove(String key) {
+    change(key,REMOVED);
+  }
+}
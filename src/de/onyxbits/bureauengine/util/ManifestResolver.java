@@ -0,0 +1,50 @@
+package de.onyxbits.bureauengine.util;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.assets.loaders.FileHandleResolver;
+import com.badlogic.gdx.files.FileHandle;
+
+import java.util.HashMap;
+
+/**
+ * Resolves internal files through a manifest, written by the asset pipeline. The manifest
+ * maps the file names the game asks for to the files that were actually shipped, one
+ * <code>requested=shipped</code> pair per line (e.g. <code>music/theme.mp3=music/theme.ogg</code>).
+ * This way, assets can be converted to a different format without touching the code that loads
+ * them. Files that are not listed (and all files, if there is no manifest) resolve as they are.
+ */
+public class ManifestResolver implements FileHandleResolver {
+
+  /**
+   * Where the asset pipeline puts the manifest (relative to the assets).
+   */
+  public static final String FILENAME = "assets.manifest";
+
+  private HashMap<String,String> mapping = new HashMap<String,String>();
+
+  /**
+   * Create a new resolver
+   * @param manifest the manifest to read. Need not exist.
+   */
+  public ManifestResolver(FileHandle manifest) {
+    if (!manifest.exists()) return;
+    String[] lines = manifest.readString("UTF-8").split("\n");
+    for (String line: lines) {
+      line=line.trim();
+      if (line.length()==0 || line.startsWith("#")) continue;
+      // File names may contain blanks, but not "=".
+      int split = line.indexOf('=');
+      if (split<1) {
+        Gdx.app.error("BureauEngine","Malformed line in "+manifest.path()+": "+line);
+        continue;
+      }
+      mapping.put(line.substring(0,split),line.substring(split+1));
+    }
+  }
+
+  @Override
+  public FileHandle resolve(String fileName) {
+    String shipped = mapping.get(fileName);
+    return Gdx.files.internal(shipped==null ? fileName : shipped);
+  }
+}
@@ -0,0 +1,173 @@
+package de.onyxbits.pocketbandit;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Vertically motion blurred copies of the reel symbols, stacked on top of each other in a
+ * single texture. Blurring is done once, on the CPU, when the strip is created. Drawing a
+ * blurred symbol is then just as cheap as drawing a sharp one.
+ * <p>
+ * The symbols are read from whatever their textures were loaded from, so they may be spread
+ * over several atlas pages and may be rotated by the packer.
+ * <p>
+ * NOTE: The texture is not managed. Call <code>reload()</code> after the GL context was lost
+ * (e.g. on resume). The blurred pixels are kept in memory for that, so it does not blur again.
+ */
+class BlurredStrip {
+
+  /**
+   * The blurred symbols (kept for <code>reload()</code>)
+   */
+  private Pixmap strip;
+
+  private Texture texture;
+  private TextureRegion[] regions;
+
+  /**
+   * What the strip was made from
+   */
+  private TextureRegion[] symbols;
+
+  /**
+   * Size of a single (unrotated) symbol
+   */
+  private int width, height;
+
+  /**
+   * Create a new strip
+   * @param symbols regions (of the same size) to blur. Their textures must be loaded from
+   * image files (not compressed).
+   * @param radius how far (in pixels) to smear every pixel up and down.
+   */
+  public BlurredStrip(TextureRegion[] symbols, int radius) {
+    this.symbols=symbols.clone();
+    width = isRotated(symbols[0]) ? symbols[0].getRegionHeight() : symbols[0].getRegionWidth();
+    height = isRotated(symbols[0]) ? symbols[0].getRegionWidth() : symbols[0].getRegionHeight();
+    // GL10 wants power of two textures.
+    strip = new Pixmap(MathUtils.nextPowerOfTwo(width),MathUtils.nextPowerOfTwo(height*symbols.length),Pixmap.Format.RGBA8888);
+
+    // Every atlas page is read only once, no matter how many symbols are on it.
+    IdentityHashMap<Texture,Pixmap> pages = new IdentityHashMap<Texture,Pixmap>();
+    Pixmap.setBlending(Pixmap.Blending.None);
+    try {
+      for (int i=0;i<symbols.length;i++) {
+        Texture page = symbols[i].getTexture();
+        Pixmap source = pages.get(page);
+        if (source==null) {
+          source=readPixels(page);
+          pages.put(page,source);
+        }
+        blur(source,symbols[i],width,height,strip,i*height,radius);
+      }
+    }
+    finally {
+      Pixmap.setBlending(Pixmap.Blending.SourceOver);
+      for (Pixmap source: pages.values()) {
+        source.dispose();
+      }
+    }
+    reload();
+  }
+
+  /**
+   * Get the pixels of a texture from the file it was loaded from.
+   * @return a pixmap the caller has to dispose.
+   */
+  private static Pixmap readPixels(Texture texture) {
+    TextureData data = texture.getTextureData();
+    if (data.getType()!=TextureData.TextureDataType.Pixmap) {
+      throw new GdxRuntimeException("Can't read the pixels of a compressed texture");
+    }
+    if (!data.isPrepared()) data.prepare();
+    Pixmap ret = data.consumePixmap();
+    if (data.disposePixmap()) return ret;
+    // The texture data owns the pixmap -> copy it, so it can be disposed of either way.
+    Pixmap copy = new Pixmap(ret.getWidth(),ret.getHeight(),ret.getFormat());
+    Pixmap.setBlending(Pixmap.Blending.None);
+    copy.drawPixmap(ret,0,0);
+    return copy;
+  }
+
+  private static boolean isRotated(TextureRegion region) {
+    return (region instanceof TextureAtlas.AtlasRegion) && ((TextureAtlas.AtlasRegion)region).rotate;
+  }
+
+  /**
+   * Box blur a region vertically. Colors are weighted by alpha, so transparent pixels don't
+   * darken the edges.
+   */
+  private static void blur(Pixmap src, TextureRegion region, int width, int height, Pixmap dest, int destY, int radius) {
+    boolean rotated = isRotated(region);
+    int srcX = region.getRegionX();
+    int srcY = region.getRegionY();
+    for (int x=0;x<width;x++) {
+      for (int y=0;y<height;y++) {
+        long r=0, g=0, b=0, a=0;
+        int count=0;
+        for (int i=Math.max(0,y-radius);i<=Math.min(height-1,y+radius);i++) {
+          // The packer rotates regions by 90 degrees counter clockwise.
+          int pixel = rotated ? src.getPixel(srcX+i,srcY+width-1-x) : src.getPixel(srcX+x,srcY+i);
+          int pa = pixel & 0xff;
+          r+=((pixel>>>24) & 0xff)*pa;
+          g+=((pixel>>>16) & 0xff)*pa;
+          b+=((pixel>>>8) & 0xff)*pa;
+          a+=pa;
+          count++;
+        }
+        int color = 0;
+        if (a>0) {
+          color = (int)(r/a)<<24 | (int)(g/a)<<16 | (int)(b/a)<<8 | (int)(a/count);
+        }
+        dest.drawPixel(x,destY+y,color);
+      }
+    }
+  }
+
+  /**
+   * (Re-)create the texture from the blurred pixels.
+   */
+  public void reload() {
+    // After a context loss, the old texture is gone anyway. Otherwise, free it.
+    if (texture!=null) texture.dispose();
+    texture = new Texture(strip);
+    regions = new TextureRegion[symbols.length];
+    for (int i=0;i<symbols.length;i++) {
+      regions[i] = new TextureRegion(texture,0,i*height,width,height);
+    }
+  }
+
+  /**
+   * Check if this strip shows a given set of symbols
+   * @param symbols the regions that would be passed to the constructor.
+   * @return true if the strip was created from the very same regions (in the same order).
+   */
+  public boolean isMadeFrom(TextureRegion[] symbols) {
+    if (symbols.length!=this.symbols.length) return false;
+    for (int i=0;i<symbols.length;i++) {
+      if (symbols[i]!=this.symbols[i]) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Query the blurred version of a symbol
+   * @param face index into the symbols passed to the constructor
+   * @return a region on the strip.
+   */
+  public TextureRegion get(int face) {
+    return regions[face];
+  }
+
+  public void dispose() {
+    texture.dispose();
+    strip.dispose();
+  }
+}
@@ -2,18 +2,30 @@ package de.onyxbits.pocketbandit;
 
 import com.badlogic.gdx.scenes.scene2d.Group;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.scenes.scene2d.utils.ScissorStack;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.graphics.Camera;
 
 /**
  * A <code>Group</code> in which drawing can be limited to a certain area.
+ * <p>
+ * If the group is a transform group, clipping is done with the scissor test, which means
+ * the batch has to be flushed before and after drawing the children. If it is not, the
+ * group does not clip at all. Instead, children are expected to cut their quads down to
+ * the clipping area with <code>drawClipped()</code>, so they go into the batch along with
+ * everything else.
  */
 public class ClippingGroup extends Group {
 
   private Rectangle scissors;
   private  Rectangle clip;
-  
+
+  /**
+   * The clipping area in batch coordinates (non-transform mode only)
+   */
+  private Rectangle drawClip;
+
   /**
    * Create a new group
    * @param clip the area in which drawing takes place.
@@ -22,18 +34,56 @@ public class ClippingGroup extends Group {
     super();
     this.clip=clip;
     scissors= new Rectangle();
+    drawClip= new Rectangle();
   }
-  
+
   @Override
   public void draw (SpriteBatch batch, float parentAlpha) {
-    
-    if (isTransform()) applyTransform(batch, computeTransform());
+    if (!isTransform()) {
+      // Our position is already offset by all non-transform parents.
+      drawClip.set(getX()+clip.x,getY()+clip.y,clip.width,clip.height);
+      super.draw(batch,parentAlpha);
+      return;
+    }
+
+    applyTransform(batch, computeTransform());
     ScissorStack.calculateScissors(getStage().getCamera(), batch.getTransformMatrix(), clip, scissors);
     ScissorStack.pushScissors(scissors);
     super.draw(batch,parentAlpha);
     batch.flush();
     ScissorStack.popScissors();
-    if (isTransform()) resetTransform(batch);
-    
+    resetTransform(batch);
+  }
+
+  /**
+   * Draw a region, leaving out everything outside of the clipping area. Children call this
+   * from their <code>draw()</code> method.
+   * @param batch the batch to draw with.
+   * @param region what to draw.
+   * @param x where to draw
+   * @param y where to draw
+   * @param width size to draw the region at
+   * @param height size to draw the region at
+   */
+  public void drawClipped(SpriteBatch batch, TextureRegion region, float x, float y, float width, float height) {
+    if (isTransform()) {
+      // The scissor test takes care of it.
+      batch.draw(region,x,y,width,height);
+      return;
+    }
+    float left = Math.max(x,drawClip.x);
+    float right = Math.min(x+width,drawClip.x+drawClip.width);
+    float bottom = Math.max(y,drawClip.y);
+    float top = Math.min(y+height,drawClip.y+drawClip.height);
+    if (left>=right || bottom>=top) return;
+
+    // Note: region.v is the top edge of the image, region.v2 the bottom one.
+    float du = region.getU2()-region.getU();
+    float dv = region.getV()-region.getV2();
+    float u = region.getU()+du*(left-x)/width;
+    float u2 = region.getU()+du*(right-x)/width;
+    float v = region.getV2()+dv*(bottom-y)/height;
+    float v2 = region.getV2()+dv*(top-y)/height;
+    batch.draw(region.getTexture(),left,bottom,right-left,top-bottom,u,v,u2,v2);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,158 @@
+package de.onyxbits.pocketbandit;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.scenes.scene2d.ui.Label;
+import com.badlogic.gdx.scenes.scene2d.ui.Widget;
+import com.badlogic.gdx.scenes.scene2d.utils.Align;
+import com.badlogic.gdx.utils.StringBuilder;
+
+/**
+ * Shows one or more numbers, each on a line of its own and behind a fixed prefix (e.g. "x 12").
+ * Unlike a <code>Label</code>, changing a number does not create any strings and does not
+ * trigger a layout: the digits are written into a reusable buffer and the widget's preferred
+ * width is fixed by the number of digits it is meant to show. Only changing the number of
+ * lines changes the preferred size.
+ */
+public class CounterLabel extends Widget {
+
+  private BitmapFont font;
+  private Color fontColor;
+
+  /**
+   * Text in front of every number
+   */
+  private String prefix;
+
+  /**
+   * Text per line (prefix and number).
+   */
+  private StringBuilder[] text;
+
+  /**
+   * Width of every line's text
+   */
+  private float[] textWidth;
+
+  /**
+   * Number of lines currently showing
+   */
+  private int lines;
+
+  /**
+   * How many digits to make room for
+   */
+  private int digits;
+
+  /**
+   * Horizontal alignment of the text (<code>Align.left</code> or <code>Align.right</code>)
+   */
+  private int alignment=Align.right;
+
+  /**
+   * Create a new label, showing the number 0.
+   * @param style font and color for text.
+   * @param prefix text to put in front of every number.
+   * @param maxLines how many numbers the label can show at once.
+   * @param digits how many digits the preferred width should make room for.
+   */
+  public CounterLabel(Label.LabelStyle style, String prefix, int maxLines, int digits) {
+    this.font=style.font;
+    this.fontColor= style.fontColor==null ? Color.WHITE : style.fontColor;
+    this.prefix=prefix;
+    this.digits=digits;
+    text = new StringBuilder[maxLines];
+    textWidth = new float[maxLines];
+    for (int i=0;i<maxLines;i++) {
+      text[i] = new StringBuilder(prefix.length()+11);
+    }
+    setValue(0);
+    pack();
+  }
+
+  /**
+   * Show a single number.
+   * @param value the number to show.
+   */
+  public void setValue(int value) {
+    setLines(1);
+    format(0,value);
+  }
+
+  /**
+   * Show another number on a new line below the ones that are already showing.
+   * @param value the number to show.
+   */
+  public void addValue(int value) {
+    if (lines==text.length) throw new IllegalStateException("Too many lines");
+    setLines(lines+1);
+    format(lines-1,value);
+  }
+
+  /**
+   * Set the horizontal alignment of the text within the label.
+   * @param alignment <code>Align.left</code> or <code>Align.right</code>.
+   */
+  public void setAlignment(int alignment) {
+    this.alignment=alignment;
+  }
+
+  private void setLines(int lines) {
+    if (this.lines==lines) return;
+    this.lines=lines;
+    invalidateHierarchy();
+  }
+
+  private void format(int line, int value) {
+    text[line].setLength(0);
+    text[line].append(prefix).append(value);
+    textWidth[line]=font.getBounds(text[line]).width;
+  }
+
+  /**
+   * Query how wide the text currently is. Unlike the preferred width, this depends on the
+   * numbers showing (e.g. for centering a label that has grown past its digits).
+   * @return width of the widest line.
+   */
+  public float getTextWidth() {
+    float ret=0;
+    for (int i=0;i<lines;i++) {
+      ret=Math.max(ret,textWidth[i]);
+    }
+    return ret;
+  }
+
+  @Override
+  public float getPrefWidth() {
+    float ret = font.getBounds(prefix).width;
+    return ret+digits*font.getBounds("0").width;
+  }
+
+  @Override
+  public float getPrefHeight() {
+    return textHeight()-font.getDescent()*2;
+  }
+
+  /**
+   * Height of all lines from the top of the first line to the baseline of the last.
+   */
+  private float textHeight() {
+    return font.getCapHeight()+(lines-1)*font.getLineHeight();
+  }
+
+  @Override
+  public void draw(SpriteBatch batch, float parentAlpha) {
+    validate();
+    Color color = getColor();
+    font.setColor(fontColor.r,fontColor.g,fontColor.b,fontColor.a*color.a*parentAlpha);
+    // Center vertically
+    float y = getY()+getHeight()/2+textHeight()/2;
+    for (int i=0;i<lines;i++) {
+      float x = getX();
+      if ((alignment & Align.right)!=0) x+=getWidth()-textWidth[i];
+      font.draw(batch,text[i],x,y);
+      y-=font.getLineHeight();
+    }
+  }
+}
@@ -14,6 +14,10 @@ import com.badlogic.gdx.math.*;
 
 import static com.badlogic.gdx.scenes.scene2d.actions.Actions.*;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
 import de.onyxbits.bureauengine.*;
 import de.onyxbits.bureauengine.screen.*;
 
@@ -23,10 +27,9 @@ import de.onyxbits.bureauengine.screen.*;
 public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implements EventListener {
 
   /**
-   * 3x3 symbols packed into a single array. First reel goes from 0 to 2, second from 3 to 5 and
-   * third from 6 to 8. Symbols within a reel are potentially unordered.
+   * The reels, left to right
    */
-  private Symbol[] reelSymbols = new Symbol[9];
+  private Reel[] reels = new Reel[3];
   
   /**
    * For toggling the number of coins the player may bet in each game.
@@ -36,7 +39,7 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
   /**
    * Amount of coins on hand
    */
-  private Label credits;
+  private CounterLabel credits;
   
   /**
    * The lever used to spin the reels
@@ -46,12 +49,12 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
   /**
    * How often the lever has been pulled.
    */
-  private Label turns;
+  private CounterLabel turns;
   
   /**
    * Displays a message to the player
    */
-  private Label feedbackMessage;
+  private CounterLabel feedbackMessage;
   
   /**
    * Displays a symbol to the player
@@ -68,6 +71,21 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
    */
   private Image feedbackBonus;
   
+  /**
+   * Start autoplay or, while autoplaying, stop it.
+   */
+  private TextButton autoplayButton;
+  
+  /**
+   * Start autoplay in turbo mode (hidden while autoplaying).
+   */
+  private TextButton turboButton;
+  
+  /**
+   * Whether the autoplay controls currently offer to stop.
+   */
+  private boolean offeringStop;
+  
   /**
    * Switch between game view and options view
    */
@@ -101,7 +119,7 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
   /**
    * Displays the name of the variation
    */
-  private Table deviceName;
+  private Label deviceName;
   
   /**
    * Rules
@@ -114,25 +132,106 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
   private Player player;
   
   /**
-   * Number of <code>Symbol</code>S in motion.
+   * Config mode: the variation the user flipped to (may still be loading).
+   */
+  private Future<Variation> pendingVariant;
+  
+  /**
+   * Number of <code>Reel</code>S in motion.
    */
   private int spinning;
+  
+  /**
+   * Whether the round in progress matched the paytable (known before the reels stop).
+   */
+  private boolean hit;
+  
+  /**
+   * Autoplay: number of rounds left to play.
+   */
+  private int autoRounds;
+  
+  /**
+   * Autoplay: play without animating the reels.
+   */
+  private boolean turbo;
+  
+  /**
+   * Autoplay: simulation steps to wait before pulling the lever again.
+   */
+  private int autoDelay;
+  
+  /**
+   * Turbo mode: the status display is out of date (it is only refreshed once per frame).
+   */
+  private boolean dirty;
+  
+  /**
+   * Autoplay: how many rounds to play per tap on the autoplay controls.
+   */
+  private static final int AUTOPLAYROUNDS = 25;
+  
+  /**
+   * Autoplay: how fast to spin the reels
+   */
+  private static final int AUTOVELOCITY = 4;
+  
+  /**
+   * Autoplay: how many steps to pause between two rounds (so the player can see the outcome).
+   */
+  private static final int AUTODELAY = 30;
+  
+  /**
+   * Turbo mode: how many rounds to play per simulation step.
+   */
+  private static final int TURBOROUNDS = 8;
 
   /**
    * Symbols on the reel
    */
-  private Drawable[] symbols;
+  private TextureRegion[] symbols;
   
   /**
    * Symbols on the paytable
    */
   private Drawable[] smallSymbols;
   
+  /**
+   * Motion blurred symbols for fast spinning reels
+   */
+  private BlurredStrip blurredSymbols;
+  
   /**
    * Container for the paytable
    */
   private ScrollPane scrollTable;
+  
+  /**
+   * The paytable
+   */
+  private PaytableWidget paytable;
+  
+  /**
+   * How many paytables to keep around on the setup screen.
+   */
+  private static final int SHEETCACHESIZE = 8;
+  
+  /**
+   * Paytables of the machines shown on the setup screen (least recently shown first), so
+   * flipping back and forth does not build them over and over again.
+   */
+  private LinkedHashMap<Variation,PaytableWidget.Sheet> sheets = 
+    new LinkedHashMap<Variation,PaytableWidget.Sheet>(SHEETCACHESIZE*2,0.75f,true) {
+      protected boolean removeEldestEntry(Map.Entry<Variation,PaytableWidget.Sheet> eldest) {
+        return size()>SHEETCACHESIZE;
+      }
+    };
 
+  /**
+   * Drawn below the stage
+   */
+  private TiledBackground background;
+  
   /**
    * Contains the actual automaton UI
    */
@@ -209,26 +308,13 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
     TextureAtlas globalAtlas =game.assetManager.get("textures/global.atlas",TextureAtlas.class);
     
     Drawable up,down,checked; // Reusables for making buttons.
-    symbols=new Drawable[variation.symbolNames.length];
-    smallSymbols=new Drawable[variation.symbolNames.length];
+    loadSymbols(variation);
     Drawable backgroundImage = new NinePatchDrawable(new NinePatch(globalAtlas.findRegion("roundbox_grey"),8,8,8,8));
     
-    // Note: Ideally this would be done in renderBackground() without the use of actors. Unfortunately,
-    // something about the stage being larger than the physical screen seems to mess with the camera
-    TextureRegion background = localAtlas.findRegion("spr_background");
-    for (int x=-12;x<Gdx.graphics.getWidth();x+=background.getRegionWidth()) {
-      for (int y=-12;y<Gdx.graphics.getHeight();y+=background.getRegionHeight()) {
-        Image img = new Image(background);
-        img.setPosition(x,y);
-        stage.addActor(img);
-      }
-    }
+    // Note: The stage's virtual size does not match the physical screen. Drawing the background
+    // with the stage's camera takes care of that.
+    background = new TiledBackground(localAtlas.findRegion("spr_background"),-12,-12);
     
-    for(int i=0;i<symbols.length;i++) {
-      symbols[i]=new TextureRegionDrawable(new TextureRegion(localAtlas.findRegion("sym_"+variation.symbolNames[i])));
-      smallSymbols[i]=new TextureRegionDrawable(new TextureRegion(localAtlas.findRegion("sym_small_"+variation.symbolNames[i])));
-    }
-
     Image frontPanel = new Image(new TextureRegionDrawable(localAtlas.findRegion("spr_frontpanel")));
     frontPanel.setPosition(19,61);
     deviceGroup.addActor(frontPanel);
@@ -241,15 +327,14 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
     deviceGroup.addActor(knob);
     
     ClippingGroup reelGroup = new ClippingGroup(new Rectangle(0,56,Gdx.graphics.getWidth(),87));
+    // The reels cut themselves to the window, so there is no need to flush the batch for scissoring.
+    reelGroup.setTransform(false);
     int[] initialFaces = variation.getInitialFaces();
-    int pos = 0;
-    for (int i=0;i<reelSymbols.length;i++) {
-      reelSymbols[i] = new Symbol(variation,symbols,initialFaces[i],i/3,this);
-      reelGroup.addActor(reelSymbols[i]);
-      if (i>0 && i%3==0) {
-        pos+=75;
-      }
-      reelSymbols[i].setPosition(pos, (i%3)*reelSymbols[0].getHeight());
+    for (int i=0;i<reels.length;i++) {
+      int[] faces = {initialFaces[i*3],initialFaces[i*3+1],initialFaces[i*3+2]};
+      reels[i] = new Reel(variation,symbols,blurredSymbols,faces,i,this);
+      reels[i].setPosition(i*75,0);
+      reelGroup.addActor(reels[i]);
     }
     reelGroup.setPosition(53,284);
     deviceGroup.addActor(reelGroup);
@@ -277,14 +362,23 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
       Image knobCount = new Image(new TextureRegionDrawable(localAtlas.findRegion("spr_turns")));
       statusBar.add(knobCount).left();
      
-      turns = new Label("x 0",((SlotMachine)game).skin);
-      statusBar.add(turns).width(30).right().padLeft(5).padRight(20);
+      Label.LabelStyle labelStyle = ((SlotMachine)game).skin.get(Label.LabelStyle.class);
+      turns = new CounterLabel(labelStyle,"x ",1,3);
+      statusBar.add(turns).width(30).right().padLeft(5).padRight(10);
     
       Image coinCount = new Image(new TextureRegionDrawable(localAtlas.findRegion("spr_cash")));
       statusBar.add(coinCount);
     
-      credits = new Label("x "+player.credit,((SlotMachine)game).skin);
-      statusBar.add(credits).width(30).right().padLeft(5).padRight(20);
+      credits = new CounterLabel(labelStyle,"x ",1,3);
+      credits.setValue(player.credit);
+      statusBar.add(credits).width(30).right().padLeft(5).padRight(10);
+      
+      autoplayButton = new TextButton("Auto",((SlotMachine)game).skin);
+      autoplayButton.addListener(this);
+      statusBar.add(autoplayButton).padRight(4);
+      turboButton = new TextButton("Fast",((SlotMachine)game).skin);
+      turboButton.addListener(this);
+      statusBar.add(turboButton).padRight(4);
     
       up = new TextureRegionDrawable(localAtlas.findRegion("btn_view_up"));
       down = new TextureRegionDrawable(localAtlas.findRegion("btn_view_down"));
@@ -314,7 +408,8 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
     
     stage.addActor(statusBar);
     
-    feedbackMessage = new Label("",((SlotMachine)game).skin);
+    feedbackMessage = new CounterLabel(((SlotMachine)game).skin.get(Label.LabelStyle.class),"+ ",3,3);
+    feedbackMessage.setAlignment(Align.left);
     feedbackSymbol = new Image(new TextureRegionDrawable(localAtlas.findRegion("spr_feedbackcoins")));
     feedbackGroup = new Group();
     feedbackGroup.addActor(feedbackMessage);
@@ -328,11 +423,12 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
     deviceGroup.addActor(feedbackBonus);
     deviceGroup.addActor(feedbackGroup);
     
-    deviceName = new Table(((SlotMachine)game).skin);
-    deviceName.setBackground(backgroundImage);
-    deviceName.add(variation.machineName);
-    deviceName.setBounds(10,422,300,48);
-    infoGroup.addActor(deviceName);
+    Table nameplate = new Table(((SlotMachine)game).skin);
+    nameplate.setBackground(backgroundImage);
+    deviceName = new Label(variation.machineName,((SlotMachine)game).skin);
+    nameplate.add(deviceName);
+    nameplate.setBounds(10,422,300,48);
+    infoGroup.addActor(nameplate);
     
     Table buttons = new Table();
     buttons.setBounds(262,150,48,200);
@@ -361,7 +457,9 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
 
     infoGroup.addActor(buttons); 
     
-    scrollTable = new ScrollPane(null,((SlotMachine)game).skin);
+    paytable = new PaytableWidget(((SlotMachine)game).skin.get(Label.LabelStyle.class),
+      new TextureRegionDrawable(localAtlas.findRegion("spr_small_cash")));
+    scrollTable = new ScrollPane(paytable,((SlotMachine)game).skin);
     setVariant(variation);
     
     scrollTable.setOverscroll(true,true);
@@ -380,62 +478,91 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
     stage.addActor(infoGroup);
   }
   
+  /**
+   * Look up the textures for the symbols of a variation
+   * @param variant the game to get the symbols for
+   */
+  private void loadSymbols(Variation variant) {
+    TextureAtlas localAtlas= game.assetManager.get("textures/gamblescreen.atlas",TextureAtlas.class);
+    symbols=new TextureRegion[variant.symbolNames.length];
+    for(int i=0;i<symbols.length;i++) {
+      symbols[i]=localAtlas.findRegion("sym_"+variant.symbolNames[i]);
+    }
+    smallSymbols=loadSmallSymbols(variant);
+    loadBlurredSymbols();
+  }
+  
+  /**
+   * Look up the small versions of the symbols of a variation (for the paytable).
+   * @param variant the game to get the symbols for
+   * @return drawables, ordered like <code>Variation.symbolNames</code>
+   */
+  private Drawable[] loadSmallSymbols(Variation variant) {
+    TextureAtlas localAtlas= game.assetManager.get("textures/gamblescreen.atlas",TextureAtlas.class);
+    Drawable[] ret=new Drawable[variant.symbolNames.length];
+    for(int i=0;i<ret.length;i++) {
+      ret[i]=new TextureRegionDrawable(new TextureRegion(localAtlas.findRegion("sym_small_"+variant.symbolNames[i])));
+    }
+    return ret;
+  }
+  
+  /**
+   * Create the motion blurred versions of the reel symbols. Nothing happens if the current
+   * ones already show the same symbols (e.g. after a rule file was edited).
+   */
+  private void loadBlurredSymbols() {
+    if (blurredSymbols!=null) {
+      if (blurredSymbols.isMadeFrom(symbols)) return;
+      blurredSymbols.dispose();
+    }
+    blurredSymbols = new BlurredStrip(symbols,Reel.BLURVELOCITY);
+  }
+  
   /**
    * setup the info on the inforscreen
    * @param variant the game to visualize
    * @return a pay table.
    */
   private void setVariant(Variation variant) {
-    Table paytable = new Table(((SlotMachine)game).skin);
-    TextureAtlas localAtlas= game.assetManager.get("textures/gamblescreen.atlas",TextureAtlas.class);
-    TextureRegion coin = new TextureRegion(localAtlas.findRegion("spr_small_cash"));
-    for (int x=0;x<variant.paytable.length;x++) {
-      for (int y=0;y<variant.paytable[x].length-1;y++) {
-        if (variant.paytable[x][y]==-1) {
-          // Wild symbol == empty space
-          paytable.add().pad(2,2,2,2);
-        }
-        else {
-          paytable.add(new Image(smallSymbols[variant.paytable[x][y]])).pad(2,2,8,2);
-        }
-      }
-      paytable.add("=").padLeft(15).padRight(10);
-      paytable.add(""+variant.paytable[x][3]).right();
-      paytable.add(new Image(coin)).padLeft(4);
-      paytable.row();
-    }
-    
     // Only show extra information on the setup screen, as the paytable visual is not desgined
     // to keep in sync with dynamically updated information
     if (player==null) {
-      Player tmp = game.loader.getPlayer(variant);
-      tmp.reVisit();
-      paytable.add("- - - - - - - - - - - - - - - - -").colspan(5).center();
-      paytable.row();
-      if (variant.luckyCoinBonus>0) {
-        paytable.add("Lucky Bonus").colspan(4).left();
-        paytable.add(""+variant.luckyCoinBonus).right();
-        paytable.add(new Image(coin)).padLeft(4);
-        paytable.row();
+      PaytableWidget.Sheet sheet = sheets.get(variant);
+      if (sheet==null) {
+        // Revised rules come as a new Variation object, so they always get a new sheet.
+        sheet = new PaytableWidget.Sheet(variant.paytable,loadSmallSymbols(variant));
+        sheet.addNote("- - - - - - - - - - - - - - - - -",-1);
+        if (variant.luckyCoinBonus>0) {
+          sheet.addNote("Lucky Bonus",variant.luckyCoinBonus);
+        }
+        sheet.addNote("Seed capital",variant.seedCapital);
+        sheet.addNote("On hand",-1);
+        sheet.addNote("Highscore",-1);
+        sheets.put(variant,sheet);
       }
-      paytable.add("Seed capital").colspan(4).left();
-      paytable.add(""+variant.seedCapital).right();
-      paytable.add(new Image(coin)).padLeft(4);
-      paytable.row();
-      paytable.add("On hand").colspan(4).left();
-      paytable.add(""+tmp.credit).right();
-      paytable.add(new Image(coin)).padLeft(4);
-      paytable.row();
-      paytable.add("Highscore").colspan(4).left();
-      paytable.add(""+tmp.highscore).right();
-      paytable.add(new Image(coin)).padLeft(4);
-    }
-    
-    paytable.pack();
+      // The stats are the only thing that may have changed since the sheet was built. On hand
+      // is what the player will have when visiting (see Player.reVisit()).
+      Player tmp = game.loader.getPlayer(variant);
+      int notes = sheet.getNoteCount();
+      sheet.setNoteValue(notes-2,Math.max(tmp.credit,variant.seedCapital));
+      sheet.setNoteValue(notes-1,tmp.highscore);
+      paytable.setSheet(sheet);
+    }
+    else {
+      paytable.setPaytable(variant.paytable,smallSymbols);
+    }
+    
     this.variation= variant;
-    scrollTable.setWidget(paytable);
-    deviceName.clear();
-    deviceName.add(variant.machineName);
+    showMachineName(variant.machineName);
+  }
+  
+  /**
+   * Put a name on the device
+   * @param name the name to show. Nothing happens if this is null.
+   */
+  private void showMachineName(String name) {
+    if (name==null) return;
+    deviceName.setText(name);
   }
   
   @Override
@@ -449,12 +576,89 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
     if (ejectCoinSound!=null) ejectCoinSound.dispose();
     if (winSound!=null) winSound.dispose();
     if (reelStopSound!=null) reelStopSound.dispose();
+    if (blurredSymbols!=null) blurredSymbols.dispose();
+    if (background!=null) background.dispose();
+  }
+  
+  @Override
+  public void resume() {
+    super.resume();
+    // Not a managed texture -> lost along with the GL context.
+    if (blurredSymbols!=null) blurredSymbols.reload();
+  }
+  
+  @Override
+  public void render(float delta) {
+    // Rule files are parsed in the background. Switch over as soon as the selection is ready.
+    if (pendingVariant!=null && pendingVariant.isDone()) {
+      setVariant(Loader.await(pendingVariant));
+      pendingVariant=null;
+    }
+    // Rule files may have been edited. Never swap the rules in the middle of a round.
+    if (!isSpinning()) {
+      Variation revised = game.loader.refresh(variation);
+      if (revised!=variation) {
+        loadSymbols(revised);
+        for (int i=0;i<reels.length;i++) {
+          reels[i].setVariation(revised,symbols,blurredSymbols);
+        }
+        setVariant(revised);
+      }
+    }
+    if (autoplayButton!=null && offeringStop!=isAutoplaying()) {
+      // Autoplay started or ran out. Always show how to take back control.
+      offeringStop=!offeringStop;
+      autoplayButton.setText(offeringStop ? "Stop" : "Auto");
+      turboButton.setVisible(!offeringStop);
+    }
+    super.render(delta);
+    if (dirty) {
+      // Turbo mode plays many rounds per frame. Only show where the last one left off.
+      for (int i=0;i<reels.length;i++) {
+        reels[i].show(player.payline[i]);
+      }
+      updateStatus();
+      dirty=false;
+    }
+  }
+  
+  @Override
+  protected void step() {
+    for (int i=0;i<reels.length;i++) {
+      reels[i].step();
+    }
+    if (autoRounds==0 || isSpinning()) return;
+    if (turbo) {
+      // Persisting once per batch is enough and keeps the preferences from churning.
+      player.setAutoPersist(false);
+      for (int i=0;i<TURBOROUNDS && autoRounds>0;i++) {
+        playQuickRound();
+        autoRounds--;
+      }
+      player.persist();
+      player.setAutoPersist(true);
+      dirty=true;
+    }
+    else if (autoDelay>0) {
+      autoDelay--;
+    }
+    else {
+      autoRounds--;
+      newRound(AUTOVELOCITY);
+    }
+  }
+  
+  @Override
+  protected boolean isAnimating() {
+    // Waiting for a rule file counts as well: the switch over happens in render().
+    return super.isAnimating() || isSpinning() || isAutoplaying() || pendingVariant!=null || dirty;
   }
   
   @Override
   public void renderBackground(float delta) {
     Gdx.gl.glClearColor(0.72f, 0.74f, 0.71f, 1);
     Gdx.gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+    background.draw(stage.getCamera());
   }
   
   /**
@@ -499,6 +703,15 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
       }
     } 
     
+    if (isOver && actor==autoplayButton && input.getType().equals(InputEvent.Type.touchUp)) {
+      if (isAutoplaying()) stopAutoplay();
+      else autoplay(AUTOPLAYROUNDS,getCheckedCoins(),false);
+    }
+    
+    if (isOver && actor==turboButton && input.getType().equals(InputEvent.Type.touchUp)) {
+      if (!isAutoplaying()) autoplay(AUTOPLAYROUNDS,getCheckedCoins(),true);
+    }
+    
     if (isOver && actor==exit && input.getType().equals(InputEvent.Type.touchUp)) {
       SlotMachine.fadeOverScreen.fadeTo(new MenuScreen<SlotMachine>(game),0.5f);
       game.setScreen(SlotMachine.fadeOverScreen);
@@ -513,74 +726,135 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
     }
     
     if (isOver && actor==nextVariation && input.getType().equals(InputEvent.Type.touchUp)) {
-      setVariant(game.loader.next());
+      pendingVariant=game.loader.next();
+      showMachineName(game.loader.getMachineName());
     }
     
     if (isOver && actor==previousVariation && input.getType().equals(InputEvent.Type.touchUp)) {
-      setVariant(game.loader.previous());
+      pendingVariant=game.loader.previous();
+      showMachineName(game.loader.getMachineName());
     }
     
     return true;
   }
   
   /**
-   * Mark a <code>Symbol</code> as either in motion or at rest.
-   * @param symbol the <code>Symbol</code> in question.
+   * Mark a <code>Reel</code> as either in motion or at rest.
+   * @param reel the <code>Reel</code> in question.
    * @param moving true if spinning, false at rest
    */
-  protected synchronized void inMotion(Symbol symbol, boolean moving) {
+  protected synchronized void inMotion(Reel reel, boolean moving) {
     if (moving) spinning++;
     else spinning--;
     
     // Provide audible feedback for a stopping reel
-    if (symbol.isOnPayline() && !moving) {
-      player.payline[symbol.getReel()]=symbol.getFace();
+    if (!moving) {
       playSoundEffect(REELSTOPSOUND);
     }
     
-    // All reels stopped -> evaluate
+    // All reels stopped -> reveal the outcome
     if (spinning==0) {
-      int win=variation.getPayout(player.bet,player.payline);
-      if (win>=0) { // Player hit a winning combination...
-        if (win==0) { // but did not bet -> nothing won, but it still counts statistically.
-          feedbackMessage.setText("+ 0");
-          player.win(0);
+      if (hit) { // Player hit a winning combination...
+        // Plain win (or nothing bet, which still counts statistically)...
+        feedbackMessage.setValue(player.payout);
+        if (player.bonus>0) { // ... with bonus
+          feedbackMessage.addValue(player.bonus);
+          float ow= feedbackBonus.getWidth();
+          float oh= feedbackBonus.getHeight();
+          feedbackBonus.addAction(sequence(fadeIn(0.1f),delay(1),fadeOut(0.1f),sizeTo(ow,oh)));
         }
-        else { // Player won for sure, but is s/he eligable for a bonus?
-          int bonusPay = 0;
-          if(bet[player.luckyCoin].isChecked() && (bonusPay=variation.getBonus(getBet()))>0) { // Bonus win!
-            feedbackMessage.setText("+ "+win+"\n+ "+bonusPay);
-            float ow= feedbackBonus.getWidth();
-            float oh= feedbackBonus.getHeight();
-            feedbackBonus.addAction(sequence(fadeIn(0.1f),delay(1),fadeOut(0.1f),sizeTo(ow,oh)));
-            player.win(win+bonusPay);
-          }
-          else { // Plain win, no bonus
-            feedbackMessage.setText("+ "+win);
-            player.win(win);
-          }
+        if (player.jackpotPayout>0) { // ... and jackpot
+          feedbackMessage.addValue(player.jackpotPayout);
         }
-        float centerPos = stage.getWidth()/2-(feedbackMessage.getWidth()+10+feedbackSymbol.getWidth())/2;
+        feedbackMessage.pack();
+        feedbackMessage.setY(feedbackSymbol.getHeight()/2-feedbackMessage.getHeight()/2);
+        // The label's width only makes room for a few digits, jackpots may be longer.
+        float centerPos = stage.getWidth()/2-(feedbackMessage.getTextWidth()+10+feedbackSymbol.getWidth())/2;
         feedbackGroup.addAction(sequence(moveTo(centerPos,85),fadeIn(0.4f),moveBy(0,-50,1f),fadeOut(0.4f)));
         playSoundEffect(WINSOUND);
       }
-      else { // Player lost this round
-        player.loose();
-      }
       
-      // Make sure, the player can not bet more coins than s/he has. NOTE: There is no explicit
-      // Game Over check. The player just runs into a dead end eventually from which on s/he can
-      // only play wagerless rounds. This is intended! The game design calls for free games as a 
-      // means of skipping over (suspected) loosing rounds (strategy element).
-      // Since this allows the player to play forever by never betting, a Game Over screen would 
-      // be meaningless.
-      for (int i=0;i<bet.length;i++) {
-        bet[i].setVisible(player.credit>i);
-      }
-      
-      credits.setText("x "+player.credit);
-      turns.setText("x "+player.round);
+      updateStatus();
+      autoDelay=AUTODELAY;
+    }
+  }
+  
+  /**
+   * Bring coins, credits and turns on display up to date.
+   */
+  private void updateStatus() {
+    // Make sure, the player can not bet more coins than s/he has. NOTE: There is no explicit
+    // Game Over check. The player just runs into a dead end eventually from which on s/he can
+    // only play wagerless rounds. This is intended! The game design calls for free games as a 
+    // means of skipping over (suspected) loosing rounds (strategy element).
+    // Since this allows the player to play forever by never betting, a Game Over screen would 
+    // be meaningless.
+    for (int i=0;i<bet.length;i++) {
+      bet[i].setVisible(player.credit>i);
+    }
+    
+    credits.setValue(player.credit);
+    turns.setValue(player.round);
+  }
+  
+  /**
+   * Let the machine play by itself. Each round, the coins that are checked (and affordable)
+   * are bet. That is also how to chase (or avoid) the lucky coin.
+   * @param rounds how many rounds to play.
+   * @param coins which coins to check: bit 0 for the first coin, bit 1 for the second, bit 2
+   * for the third.
+   * @param turbo true to play at full speed without animation or sound.
+   */
+  public synchronized void autoplay(int rounds, int coins, boolean turbo) {
+    if (player==null) return;
+    for (int i=0;i<bet.length;i++) {
+      bet[i].setChecked((coins & (1<<i))!=0);
+    }
+    this.turbo=turbo;
+    autoRounds=rounds;
+    autoDelay=0;
+  }
+  
+  /**
+   * Query which coins are checked for betting
+   * @return a bitmask as taken by <code>autoplay()</code>.
+   */
+  private int getCheckedCoins() {
+    int ret=0;
+    for (int i=0;i<bet.length;i++) {
+      if (bet[i].isChecked()) ret|=1<<i;
     }
+    return ret;
+  }
+  
+  /**
+   * Stop playing by itself (the current round still finishes).
+   */
+  public synchronized void stopAutoplay() {
+    autoRounds=0;
+  }
+  
+  /**
+   * Query if the machine is playing by itself
+   * @return true while autoplay is running.
+   */
+  public synchronized boolean isAutoplaying() {
+    return autoRounds>0;
+  }
+  
+  /**
+   * Play a round without reels, sound or visual feedback (turbo mode).
+   */
+  private void playQuickRound() {
+    // Same as getBet(), but the coins on display may be out of date.
+    int coins=0;
+    for (int i=0;i<bet.length;i++) {
+      if (bet[i].isChecked() && player.credit>i) coins++;
+    }
+    boolean luckyCoinPlayed = bet[player.luckyCoin].isChecked() && player.credit>player.luckyCoin;
+    player.gamble(coins);
+    player.roll();
+    player.settle(luckyCoinPlayed);
   }
   
   /**
@@ -597,10 +871,14 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
    */
   public synchronized void newRound(int velocity) {
     if (isSpinning()) return;
+    // The round is decided before the reels even start moving. They merely present the
+    // outcome, so neither frame rate nor timing can influence it.
     player.gamble(getBet());
-    credits.setText("x "+player.credit);
-    for (int i=0;i<reelSymbols.length;i++) {
-      reelSymbols[i].spin((1+i/3 )* 3 +velocity,velocity);
+    player.roll();
+    hit=player.settle(bet[player.luckyCoin].isChecked());
+    credits.setValue(player.credit-player.payout-player.bonus-player.jackpotPayout);
+    for (int i=0;i<reels.length;i++) {
+      reels[i].spin((1+i)*3+velocity,velocity,player.payline[i]);
     }
   }
   
@@ -633,33 +911,22 @@ public class GambleScreen<T extends SlotMachine> extends StageScreen<T> implemen
   }
   
   /**
-   * Try stopping the wheels. This may or may not succeed (skill element).
-   * Wheels are stopped from left to right.
+   * Bring the leftmost spinning wheel to a halt early. This only shortens the spin: the
+   * outcome of the round is decided before the wheels start moving, so braking never
+   * changes which symbols land on the payline. Wheels are stopped from left to right.
    */
   public synchronized void brakeWheels() {
     switch (spinning) {
-      case 1:
-      case 2:
-      case 3: {
-        reelSymbols[6].handbrake();
-        reelSymbols[7].handbrake();
-        reelSymbols[8].handbrake();
+      case 1: {
+        reels[2].handbrake();
         break;
       }
-      case 4:
-      case 5:
-      case 6: {
-        reelSymbols[3].handbrake();
-        reelSymbols[4].handbrake();
-        reelSymbols[5].handbrake();
+      case 2: {
+        reels[1].handbrake();
         break;
       }
-      case 7:
-      case 8:
-      case 9: {
-        reelSymbols[0].handbrake();
-        reelSymbols[1].handbrake();
-        reelSymbols[2].handbrake();
+      case 3: {
+        reels[0].handbrake();
         break;
       }
       default: {
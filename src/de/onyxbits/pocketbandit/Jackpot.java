@@ -0,0 +1,85 @@
+package de.onyxbits.pocketbandit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A progressive jackpot that is fed by a share of every bet and shared by everyone who
+ * plays the same <code>Variation</code>. Contributions are spread over several counters
+ * (picked by thread), so concurrent players rarely touch the same memory. Awarding
+ * drains all counters, so every contribution is paid out exactly once: either with the
+ * current jackpot or with the next one.
+ * <p>
+ * Amounts are kept in thousandths of a coin, since a share of a single coin bet is
+ * usually less than a coin.
+ */
+public class Jackpot {
+
+  /**
+   * Contributions in thousandths of a coin. Length is always a power of two.
+   */
+  private AtomicLong[] cells;
+
+  /**
+   * What the jackpot starts with (in coins), funded by the house.
+   */
+  private int seed;
+
+  /**
+   * Create a new jackpot
+   * @param seed what the jackpot starts with (and restarts with after it was won).
+   * @param pool thousandths of a coin that were already contributed (e.g. from a previous run).
+   */
+  public Jackpot(int seed, long pool) {
+    int size=1;
+    while (size<Runtime.getRuntime().availableProcessors()*2) size<<=1;
+    cells = new AtomicLong[size];
+    for (int i=0;i<size;i++) {
+      cells[i]=new AtomicLong();
+    }
+    cells[0].set(pool);
+    this.seed=seed;
+  }
+
+  /**
+   * Feed the jackpot.
+   * @param amount thousandths of a coin to add.
+   */
+  public void contribute(long amount) {
+    cells[(int)Thread.currentThread().getId() & (cells.length-1)].addAndGet(amount);
+  }
+
+  /**
+   * Query the current contributions (not including the seed). This is only a snapshot
+   * when other threads are contributing.
+   * @return thousandths of a coin
+   */
+  public long getPool() {
+    long ret=0;
+    for (int i=0;i<cells.length;i++) {
+      ret+=cells[i].get();
+    }
+    return ret;
+  }
+
+  /**
+   * Query how much the jackpot would pay right now.
+   * @return number of coins
+   */
+  public int getValue() {
+    return seed+(int)(getPool()/1000);
+  }
+
+  /**
+   * Win the jackpot. The contributions are drained and paid out along with the seed.
+   * Fractions of a coin stay in the jackpot.
+   * @return number of coins won
+   */
+  public synchronized int award() {
+    long total=0;
+    for (int i=0;i<cells.length;i++) {
+      total+=cells[i].getAndSet(0);
+    }
+    cells[0].addAndGet(total%1000);
+    return seed+(int)(total/1000);
+  }
+}
@@ -23,11 +23,6 @@ class KnobHandler extends DragListener {
    */
   private Player player;
   
-  /**
-   * Reference to the reels to spin
-   */
-  private Symbol[] reelSymbols;
-  
   /**
    * May not move above this point
    */
@@ -130,6 +125,8 @@ class KnobHandler extends DragListener {
   }
   
   public void dragStart (InputEvent event, float x, float y, int pointer) {
+    // Touching the knob takes back control from autoplay.
+    gambleScreen.stopAutoplay();
     offset=y;
     startTime=TimeUtils.millis();
   }
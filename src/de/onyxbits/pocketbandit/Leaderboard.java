@@ -0,0 +1,357 @@
+package de.onyxbits.pocketbandit;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ranks players by score, per <code>Variation</code> and across all of them. Scores are
+ * submitted without taking a lock (so the spin path never waits on a query) and merged
+ * into the boards in batches. Pending submissions live in a preallocated ring, so
+ * submitting does not create any garbage either. Every board is an order statistics tree, so the rank of any
+ * player can be looked up in logarithmic time. Boards are bounded: once a board is full,
+ * the lowest entry drops out whenever a new one comes in.
+ */
+public class Leaderboard {
+
+  /**
+   * Name of the board that ranks across all variations.
+   */
+  public static final String GLOBAL = "*";
+
+  /**
+   * Merge pending submissions once this many have piled up (if nobody else is busy).
+   */
+  private static final int DRAINTHRESHOLD = 1024;
+
+  /**
+   * How many submissions may be pending at once. Must be a power of two.
+   */
+  private static final int QUEUESIZE = 4096;
+
+  // Submissions that have not been merged yet, in a bounded multi producer ring. A slot may
+  // be written when its sequence number equals the position being written and read once it
+  // is one past that. Positions are allowed to overflow.
+  private String[] pendingBoard = new String[QUEUESIZE];
+  private int[] pendingId = new int[QUEUESIZE];
+  private int[] pendingScore = new int[QUEUESIZE];
+  private AtomicIntegerArray sequence = new AtomicIntegerArray(QUEUESIZE);
+
+  /**
+   * Next position to write to
+   */
+  private AtomicInteger tail = new AtomicInteger();
+
+  /**
+   * Next position to read from. Only written while holding the lock.
+   */
+  private volatile int head;
+
+  /**
+   * Guards the boards
+   */
+  private ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * All boards by name
+   */
+  private HashMap<String,Board> boards = new HashMap<String,Board>();
+
+  /**
+   * Maximum number of entries per board
+   */
+  private int capacity;
+
+  /**
+   * For balancing the trees
+   */
+  private Random rng = new Random(System.currentTimeMillis());
+
+  /**
+   * Tree node. Nodes are ordered by descending score, ties are broken by ascending id.
+   */
+  private static class Node {
+    int id;
+    int score;
+    int priority;
+    int size;
+    Node left;
+    Node right;
+  }
+
+  private static class Board {
+    Node root;
+    HashMap<Integer,Node> nodes = new HashMap<Integer,Node>();
+  }
+
+  /**
+   * Create a new leaderboard
+   * @param capacity maximum number of players to rank per board.
+   */
+  public Leaderboard(int capacity) {
+    if (capacity<1) throw new IllegalArgumentException();
+    this.capacity=capacity;
+    for (int i=0;i<QUEUESIZE;i++) {
+      sequence.set(i,i);
+    }
+  }
+
+  /**
+   * Submit a score. This only blocks if <code>QUEUESIZE</code> submissions are pending
+   * (in which case the caller helps merging them). The score is entered on the given board
+   * and on the <code>GLOBAL</code> board. A player only moves up on a board, never down.
+   * @param board name of the board (usually <code>Variation.machineName</code>).
+   * @param id the player
+   * @param score the score to rank by
+   */
+  public void submit(String board, int id, int score) {
+    while (!offer(board,id,score)) {
+      lock.lock();
+      try {
+        drain();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+    if (tail.get()-head>=DRAINTHRESHOLD && lock.tryLock()) {
+      try {
+        drain();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Put a submission into the ring
+   * @return false if the ring is full.
+   */
+  private boolean offer(String board, int id, int score) {
+    while (true) {
+      int pos = tail.get();
+      int slot = pos & (QUEUESIZE-1);
+      int diff = sequence.get(slot)-pos;
+      if (diff<0) return false;
+      if (diff==0 && tail.compareAndSet(pos,pos+1)) {
+        pendingBoard[slot]=board;
+        pendingId[slot]=id;
+        pendingScore[slot]=score;
+        // Publishes the fields above to drain().
+        sequence.set(slot,pos+1);
+        return true;
+      }
+      // Some other thread claimed the slot first -> try the next one.
+    }
+  }
+
+  /**
+   * Look up the rank of a player
+   * @param board name of the board
+   * @param id the player
+   * @return the rank (1 being the best) or -1 if the player is not on the board.
+   */
+  public int rank(String board, int id) {
+    lock.lock();
+    try {
+      drain();
+      Board b = boards.get(board);
+      if (b==null) return -1;
+      Node n = b.nodes.get(id);
+      if (n==null) return -1;
+      return countBefore(b.root,n.score,n.id)+1;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * List the best players of a board
+   * @param board name of the board
+   * @param k maximum number of players to list. Negative values count as 0.
+   * @return ids of the best players, best one first.
+   */
+  public int[] top(String board, int k) {
+    lock.lock();
+    try {
+      drain();
+      Board b = boards.get(board);
+      if (b==null) return new int[0];
+      int[] ret = new int[Math.max(0,Math.min(k,size(b.root)))];
+      collect(b.root,ret,0);
+      return ret;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Merge all pending submissions into the boards. Must hold the lock.
+   */
+  private void drain() {
+    while (true) {
+      int pos = head;
+      int slot = pos & (QUEUESIZE-1);
+      // Empty, or the next submission is still being written (it will be merged next time).
+      if (sequence.get(slot)!=pos+1) return;
+      String board = pendingBoard[slot];
+      int id = pendingId[slot];
+      int score = pendingScore[slot];
+      pendingBoard[slot]=null;
+      sequence.set(slot,pos+QUEUESIZE);
+      head=pos+1;
+      enter(board,id,score);
+      enter(GLOBAL,id,score);
+    }
+  }
+
+  /**
+   * Put a score on a board
+   * @param name board name
+   * @param id player
+   * @param score new score
+   */
+  private void enter(String name, int id, int score) {
+    Board b = boards.get(name);
+    if (b==null) {
+      b = new Board();
+      boards.put(name,b);
+    }
+    Node n = b.nodes.get(id);
+    if (n!=null) {
+      if (n.score>=score) return;
+      b.root=remove(b.root,n.score,n.id);
+    }
+    else {
+      if (b.nodes.size()>=capacity) {
+        Node last = last(b.root);
+        if (compare(score,id,last)>=0) return; // Would drop out right away
+        b.root=remove(b.root,last.score,last.id);
+        b.nodes.remove(last.id);
+      }
+      n = new Node();
+      n.id=id;
+      n.priority=rng.nextInt();
+      b.nodes.put(id,n);
+    }
+    n.score=score;
+    n.left=null;
+    n.right=null;
+    n.size=1;
+    b.root=insert(b.root,n);
+  }
+
+  /**
+   * Compare a key against a node
+   * @return negative if the key ranks before the node, 0 if equal, positive if after.
+   */
+  private static int compare(int score, int id, Node n) {
+    if (score!=n.score) return score>n.score ? -1 : 1;
+    if (id!=n.id) return id<n.id ? -1 : 1;
+    return 0;
+  }
+
+  private static int size(Node n) {
+    return n==null ? 0 : n.size;
+  }
+
+  private static void update(Node n) {
+    n.size=1+size(n.left)+size(n.right);
+  }
+
+  private static Node rotateRight(Node n) {
+    Node l = n.left;
+    n.left=l.right;
+    l.right=n;
+    update(n);
+    update(l);
+    return l;
+  }
+
+  private static Node rotateLeft(Node n) {
+    Node r = n.right;
+    n.right=r.left;
+    r.left=n;
+    update(n);
+    update(r);
+    return r;
+  }
+
+  private static Node insert(Node t, Node n) {
+    if (t==null) return n;
+    if (compare(n.score,n.id,t)<0) {
+      t.left=insert(t.left,n);
+      if (t.left.priority>t.priority) return rotateRight(t);
+    }
+    else {
+      t.right=insert(t.right,n);
+      if (t.right.priority>t.priority) return rotateLeft(t);
+    }
+    update(t);
+    return t;
+  }
+
+  private static Node remove(Node t, int score, int id) {
+    if (t==null) return null;
+    int c = compare(score,id,t);
+    if (c<0) {
+      t.left=remove(t.left,score,id);
+    }
+    else if (c>0) {
+      t.right=remove(t.right,score,id);
+    }
+    else {
+      if (t.left==null) return t.right;
+      if (t.right==null) return t.left;
+      if (t.left.priority>t.right.priority) {
+        t=rotateRight(t);
+        t.right=remove(t.right,score,id);
+      }
+      else {
+        t=rotateLeft(t);
+        t.left=remove(t.left,score,id);
+      }
+    }
+    update(t);
+    return t;
+  }
+
+  /**
+   * Count the nodes that rank before a key
+   */
+  private static int countBefore(Node t, int score, int id) {
+    int ret=0;
+    while (t!=null) {
+      int c = compare(score,id,t);
+      if (c<=0) {
+        t=t.left;
+      }
+      else {
+        ret+=size(t.left)+1;
+        t=t.right;
+      }
+    }
+    return ret;
+  }
+
+  private static Node last(Node t) {
+    while (t.right!=null) t=t.right;
+    return t;
+  }
+
+  /**
+   * In order traversal, filling <code>out</code> from <code>pos</code> until it is full.
+   * @return the next free position in <code>out</code>.
+   */
+  private static int collect(Node t, int[] out, int pos) {
+    if (t==null || pos>=out.length) return pos;
+    pos=collect(t.left,out,pos);
+    if (pos<out.length) out[pos++]=t.id;
+    return collect(t.right,out,pos);
+  }
+}
@@ -1,13 +1,40 @@
 package de.onyxbits.pocketbandit;
 
 import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Preferences;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Handles access to the <code>Variation</code> rule definition files.
+ * Handles access to the <code>Variation</code> rule definition files. Rule files are parsed
+ * on a background pool. The current selection is parsed first, then its neighbours in the
+ * ring, so flipping through the machines does not have to wait.
+ * <p>
+ * Parsed rules and their <code>Player</code>S are kept in a cache of bounded size. When
+ * it is full, the least recently used machine is dropped. It is transparently parsed again
+ * (and its <code>Player</code> restored from the preferences) when it is needed next.
+ * <p>
+ * Optionally, the loader watches a local directory for edited copies of the rule files
+ * (see <code>watch()</code>) and reparses them in the background. Revised rules are only
+ * swapped in when asked for via <code>refresh()</code>, so the caller decides when it is
+ * safe to change the rules (e.g. not while the reels are spinning).
  */
 class Loader {
 
@@ -15,39 +42,226 @@ class Loader {
    * The directory (relative to the assets) that contains the rules definition
    */
   public static final String RULESDIR = "rules";
-  
+
+  /**
+   * Default number of machines to keep in the cache
+   */
+  public static final int CACHESIZE = 16;
+
   /**
    * The key with which we persist the players chosen machine
    */
   private static final String KEYNAME = "rulefile";
-  
+
+  /**
+   * Prefetch priority for the current selection (lower is more urgent)
+   */
+  private static final int URGENT = 0;
+
+  /**
+   * Prefetch priority for the neighbours of the current selection
+   */
+  private static final int NEIGHBOUR = 1;
+
+  /**
+   * For turning an already parsed <code>Variation</code> into a completed task
+   */
+  private static final Runnable NOOP = new Runnable() {
+    public void run() {}
+  };
+
   private String[] rules;
+
+  /**
+   * Machine names by rule file as listed in the <code>RuleManifest</code> (null if unknown).
+   */
+  private String[] names;
+
   private int index;
-  private Variation[] variations;
+  private SessionHost host;
+
+  /**
+   * How the players are known on the <code>host</code>'s leaderboard. All machines are
+   * played by the same person.
+   */
+  private int playerId;
   private Preferences prefs;
-  private Json json;
-  private Player[] players;
-  
-  public Loader(Preferences prefs) {
-    if (prefs==null) throw new NullPointerException();
+  private Random rng;
+
+  /**
+   * A cached machine
+   */
+  private static class Slot {
+    FutureTask<Variation> task;
+    Player player;
+
+    /**
+     * Set when the slot is dropped from the cache. Guarded by the <code>Loader</code>.
+     */
+    boolean evicted;
+  }
+
+  /**
+   * Cached machines by index into <code>rules</code>, least recently used first. Guarded
+   * by <code>this</code>.
+   */
+  private LinkedHashMap<Integer,Slot> cache;
+
+  /**
+   * Maps parsed <code>Variation</code>S back to their index into <code>rules</code>. Only
+   * contains what is in the <code>cache</code>. Guarded by <code>this</code>.
+   */
+  private IdentityHashMap<Variation,Integer> indices = new IdentityHashMap<Variation,Integer>();
+
+  /**
+   * Maps every <code>Variation</code> that was handed out (and is still in use somewhere)
+   * to its index into <code>rules</code>, so it can be put back into the <code>cache</code>
+   * after it was dropped. <code>Variation</code> does not override <code>equals()</code>, so
+   * this is by identity. Guarded by <code>this</code>.
+   */
+  private WeakHashMap<Variation,Integer> origins = new WeakHashMap<Variation,Integer>();
+
+  /**
+   * Parses the rule files
+   */
+  private ThreadPoolExecutor pool;
+
+  /**
+   * For keeping prefetch requests of equal priority in order
+   */
+  private long sequence;
+
+  /**
+   * Local directory with edited copies of the rule files. Null if not watching.
+   */
+  private FileHandle overrides;
+
+  /**
+   * Polls <code>overrides</code> for changes. Null if not watching.
+   */
+  private ScheduledExecutorService watcher;
+
+  /**
+   * Modification time of the edited rule files as of the last poll (0: no edited copy).
+   * Only touched by the <code>watcher</code>.
+   */
+  private long[] modified;
+
+  /**
+   * Revised rules (by index into <code>rules</code>) waiting to be swapped in by
+   * <code>refresh()</code>. Guarded by <code>this</code>.
+   */
+  private HashMap<Integer,Variation> staged = new HashMap<Integer,Variation>();
+
+  /**
+   * A request to parse a rule file with a given priority
+   */
+  private static class Prefetch implements Runnable, Comparable<Prefetch> {
+    FutureTask<Variation> task;
+    int priority;
+    long sequence;
+
+    public void run() {
+      // Note: this is a no-op if the task already ran (e.g. due to an earlier request).
+      task.run();
+    }
+
+    public int compareTo(Prefetch other) {
+      if (priority!=other.priority) return priority<other.priority ? -1 : 1;
+      if (sequence!=other.sequence) return sequence<other.sequence ? -1 : 1;
+      return 0;
+    }
+  }
+
+  /**
+   * Create a new loader
+   * @param host creates the players.
+   * @param prefs where to persist the chosen machine and the players' state.
+   * @param rng source of randomness for the players.
+   */
+  public Loader(SessionHost host, Preferences prefs, Random rng) {
+    this(host,prefs,rng,CACHESIZE);
+  }
+
+  /**
+   * Create a new loader
+   * @param host creates the players.
+   * @param prefs where to persist the chosen machine and the players' state.
+   * @param rng source of randomness for the players.
+   * @param capacity how many machines to keep parsed at most (at least 4).
+   */
+  public Loader(SessionHost host, Preferences prefs, Random rng, final int capacity) {
+    if (host==null || prefs==null || rng==null) throw new NullPointerException();
+    if (capacity<4) throw new IllegalArgumentException("The current machine and its neighbours must fit");
+    this.host=host;
+    playerId=host.reserve();
     this.prefs=prefs;
-    json = new Json();
+    this.rng=rng;
+    cache = new LinkedHashMap<Integer,Slot>(capacity*2,0.75f,true) {
+      protected boolean removeEldestEntry(Map.Entry<Integer,Slot> eldest) {
+        if (size()<=capacity) return false;
+        // The player's state is persisted after every round, so nothing is lost here.
+        Slot slot = eldest.getValue();
+        slot.evicted=true;
+        Variation v = peek(slot);
+        if (v!=null) indices.remove(v);
+        return true;
+      }
+    };
+    int threads = Math.max(1,Runtime.getRuntime().availableProcessors()-1);
+    pool = new ThreadPoolExecutor(threads,threads,10,TimeUnit.SECONDS,new PriorityBlockingQueue<Runnable>(),
+      new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread ret = new Thread(r,"PocketBandit-Loader");
+          ret.setDaemon(true);
+          return ret;
+        }
+      });
+    pool.allowCoreThreadTimeOut(true);
   }
-  
+
   /**
-   * Scan the rules definition directory
+   * Scan the rules definition directory and start parsing the current selection in the
+   * background.
    */
-  public void rescan() {
-    FileHandle fh[] = Gdx.files.internal(RULESDIR).list();
-    rules = new String[fh.length];
-    variations = new Variation[fh.length];
-    players = new Player[fh.length];
-    for (int i=0;i<fh.length;i++) {
-      rules[i]=fh[i].path();
+  public synchronized void rescan() {
+    String[] tmp;
+    RuleManifest manifest = null;
+    try {
+      manifest = RuleManifest.read(Gdx.files.internal(RuleManifest.FILENAME));
+    }
+    catch (Exception e) {
+      Gdx.app.error("PocketBandit","Could not read "+RuleManifest.FILENAME,e);
+    }
+    if (manifest!=null) {
+      // Already sorted at build time.
+      tmp = new String[manifest.entries.length];
+      names = new String[manifest.entries.length];
+      for (int i=0;i<tmp.length;i++) {
+        tmp[i]=manifest.entries[i].path;
+        names[i]=manifest.entries[i].machineName;
+      }
+    }
+    else {
+      // No manifest (e.g. running from an IDE without the ant build) -> list the directory.
+      FileHandle fh[] = Gdx.files.internal(RULESDIR).list();
+      tmp = new String[fh.length];
+      names = new String[fh.length];
+      for (int i=0;i<fh.length;i++) {
+        tmp[i]=fh[i].path();
+      }
+      // Note: file- and variationname are not connected. By convention, filenames should be
+      // the lowercase version of the variation name with underscores replacing the spaces.
+      Arrays.sort(tmp);
+    }
+    for (Slot slot: cache.values()) {
+      slot.evicted=true;
     }
-    // Note: file- and variationname are not connected. By convention, filenames should be
-    // the lowercase version of the variation name with underscores replacing the spaces.
-    Arrays.sort(rules);
+    cache.clear();
+    indices.clear();
+    origins.clear();
+    staged.clear();
+    rules=tmp;
     index=0;
     String name = prefs.getString(KEYNAME,rules[0]);
     for (int i=0;i<rules.length;i++) {
@@ -56,65 +270,297 @@ class Loader {
         break;
       }
     }
+    prefetchAround(index);
+  }
+
+  /**
+   * Stop parsing in the background.
+   */
+  public void dispose() {
+    pool.shutdownNow();
+    if (watcher!=null) watcher.shutdownNow();
+  }
+
+  /**
+   * Start watching a local directory for edited copies of the rule files. A file in there
+   * replaces the rule file of the same name as soon as it is modified (or created). Meant
+   * for tuning paytables without restarting the game.
+   * @param dir where to look for edited rule files (e.g. a local "rules" directory).
+   * @param interval how often to check for changes (in milliseconds).
+   */
+  public synchronized void watch(FileHandle dir, long interval) {
+    if (watcher!=null) return;
+    overrides=dir;
+    watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread ret = new Thread(r,"PocketBandit-Watcher");
+        ret.setDaemon(true);
+        ret.setPriority(Thread.MIN_PRIORITY);
+        return ret;
+      }
+    });
+    watcher.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        poll();
+      }
+    },0,interval,TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Check the edited rule files for changes and stage the ones that changed. Runs on the
+   * <code>watcher</code>.
+   */
+  private void poll() {
+    String[] files;
+    synchronized(this) {
+      files=rules;
+    }
+    // The first poll (after a rescan) only takes note of what is there. Only changes made
+    // from then on are picked up.
+    boolean first = modified==null || modified.length!=files.length;
+    if (first) modified = new long[files.length];
+    for (int i=0;i<files.length;i++) {
+      FileHandle file = overrides.child(Gdx.files.internal(files[i]).name());
+      long lastModified = file.exists() ? file.lastModified() : 0;
+      if (lastModified==modified[i]) continue;
+      modified[i]=lastModified;
+      if (first || lastModified==0) continue;
+      synchronized(this) {
+        // Machines that are not cached read the edited copy when they are parsed next.
+        if (files!=rules || !cache.containsKey(i)) continue;
+      }
+      try {
+        Variation v = new Json().fromJson(Variation.class,file);
+        synchronized(this) {
+          if (files==rules) staged.put(i,v);
+        }
+        // The screen may have stopped rendering and would not notice before the next touch.
+        Gdx.graphics.requestRendering();
+      }
+      catch (Exception e) {
+        // Likely saved in the middle of editing. Try again on the next change.
+        Gdx.app.error("PocketBandit","Could not reload "+file.path(),e);
+      }
+    }
+  }
+
+  /**
+   * Swap in all revised rules that are staged. The cached <code>Player</code>S switch over
+   * to the revised rules as well. Call this on the rendering thread when it is safe to change
+   * the rules (that is: between rounds).
+   * @param current the <code>Variation</code> the caller is using.
+   * @return the revised version of <code>current</code> or <code>current</code> itself if
+   * it was not revised.
+   */
+  public synchronized Variation refresh(Variation current) {
+    if (staged.isEmpty()) return current;
+    Variation ret = current;
+    for (Map.Entry<Integer,Variation> e: staged.entrySet()) {
+      Slot slot = cache.get(e.getKey());
+      if (slot==null) continue;
+      Variation old = peek(slot);
+      Variation revised = e.getValue();
+      if (old!=null) indices.remove(old);
+      if (old==current) ret=revised;
+      slot.task = new FutureTask<Variation>(NOOP,revised);
+      slot.task.run();
+      indices.put(revised,e.getKey());
+      origins.put(revised,e.getKey());
+      if (slot.player!=null) slot.player.setVariation(revised);
+      names[e.getKey()]=revised.machineName;
+    }
+    staged.clear();
+    return ret;
   }
-  
+
   /**
-   * Returns the default <code>Variation</code>
+   * Returns the default <code>Variation</code>. Blocks till the rule file is parsed.
    * @return either the configured <code>Variation</code> or the first one we can find.
    */
   public Variation getDefault() {
-    if (variations[index]==null) {
-      variations[index]=json.fromJson(Variation.class,Gdx.files.internal(rules[index]));
+    FutureTask<Variation> task;
+    synchronized(this) {
+      task=slot(index).task;
     }
-    return variations[index];
+    // Parse on the calling thread if no worker got to it yet. Must not hold the lock while
+    // waiting, the task itself needs it.
+    task.run();
+    return await(task);
   }
-  
+
   /**
-   * Get the cached player object for a variation
+   * Query the name of the currently selected machine without waiting for its rule file to
+   * be parsed.
+   * @return the <code>machineName</code> or null if it is not known yet.
+   */
+  public synchronized String getMachineName() {
+    if (names[index]!=null) return names[index];
+    Slot slot = cache.get(index);
+    if (slot!=null) {
+      Variation v = peek(slot);
+      if (v!=null) return v.machineName;
+    }
+    return null;
+  }
+
+  /**
+   * Get the cached player object for a variation. The player is created (or restored from
+   * the preferences) if it is not cached yet. A variation that was dropped from the cache is
+   * put back.
    * @param v key
-   * @return value or null if key is not found.
+   * @return the player, never null.
    */
-  public Player getPlayer(Variation v) {
-    for(int i=0;i<variations.length;i++) {
-      if (variations[i]==v) {
-        if (players[i]==null) {
-          players[i]= new Player(v);
-        }
-        return players[i];
+  public synchronized Player getPlayer(Variation v) {
+    Integer idx = indices.get(v);
+    if (idx==null) {
+      idx = origins.get(v);
+      if (idx==null) {
+        // Not one of ours (or from before a rescan). The player's state lives in the
+        // preferences, so an uncached player is just as good.
+        return createPlayer(v);
+      }
+      Slot slot = cache.get(idx);
+      if (slot==null) {
+        // Dropped from the cache. No need to parse again, the caller still has the rules.
+        slot = new Slot();
+        slot.task = new FutureTask<Variation>(NOOP,v);
+        slot.task.run();
+        cache.put(idx,slot);
+        indices.put(v,idx);
       }
     }
-    return null;
+    Slot slot = slot(idx);
+    if (slot.player==null) slot.player = createPlayer(v);
+    return slot.player;
   }
-  
+
+  /**
+   * Create (or restore from the preferences) the player of a machine
+   */
+  private Player createPlayer(Variation v) {
+    return host.createPlayer(v,prefs,rng,playerId);
+  }
+
   /**
-   * Return the next <code>Variation</code> in the ring buffer
-   * @return a <code>Variation</code>
+   * Move on to the next <code>Variation</code> in the ring buffer
+   * @return the <code>Variation</code>, which may still be in the making.
    */
-  public Variation next() {
+  public synchronized Future<Variation> next() {
     index++;
     if (index>=rules.length) {
       index=0;
     }
     prefs.putString(KEYNAME,rules[index]);
-    if (variations[index]==null) {
-      variations[index]=json.fromJson(Variation.class,Gdx.files.internal(rules[index]));
-    }
-    return variations[index];
+    prefetchAround(index);
+    return slot(index).task;
   }
-  
+
   /**
-   * Return the next <code>Variation</code> in the ring buffer
-   * @return a <code>Variation</code>
+   * Move on to the previous <code>Variation</code> in the ring buffer
+   * @return the <code>Variation</code>, which may still be in the making.
    */
-  public Variation previous() {
+  public synchronized Future<Variation> previous() {
     index--;
-    if (index<=0) {
+    if (index<0) {
       index=rules.length-1;
     }
     prefs.putString(KEYNAME,rules[index]);
-    if (variations[index]==null) {
-      variations[index]=json.fromJson(Variation.class,Gdx.files.internal(rules[index]));
+    prefetchAround(index);
+    return slot(index).task;
+  }
+
+  /**
+   * Wait for a <code>Variation</code> handed out by <code>next()</code> or <code>previous()</code>.
+   * @param future the <code>Variation</code> in the making
+   * @return the parsed rules.
+   */
+  public static Variation await(Future<Variation> future) {
+    try {
+      return future.get();
+    }
+    catch (Exception e) {
+      throw new GdxRuntimeException("Could not load rules",e);
     }
-    return variations[index];
   }
-}
\ No newline at end of file
+
+  /**
+   * Look up a machine in the cache and put it there if it is not. Must be called with the
+   * lock held.
+   * @param idx index into <code>rules</code>
+   * @return the cached machine (its rules may still be in the making).
+   */
+  private Slot slot(final int idx) {
+    Slot ret = cache.get(idx);
+    if (ret!=null) return ret;
+    final Slot slot = new Slot();
+    slot.task = new FutureTask<Variation>(new Callable<Variation>() {
+      public Variation call() {
+        // Json objects are not thread safe -> one per file.
+        Variation v = new Json().fromJson(Variation.class,source(idx));
+        synchronized(Loader.this) {
+          if (!slot.evicted) indices.put(v,idx);
+          origins.put(v,idx);
+        }
+        return v;
+      }
+    });
+    cache.put(idx,slot);
+    return slot;
+  }
+
+  /**
+   * Figure out where to read a rule file from
+   * @param idx index into <code>rules</code>
+   * @return the edited copy if we are watching and there is one, the original otherwise.
+   */
+  private FileHandle source(int idx) {
+    FileHandle ret = Gdx.files.internal(rules[idx]);
+    if (overrides!=null) {
+      FileHandle edited = overrides.child(ret.name());
+      if (edited.exists()) return edited;
+    }
+    return ret;
+  }
+
+  /**
+   * Get the rules of a cached machine without waiting
+   * @param slot the machine
+   * @return the parsed rules or null if they are still in the making (or failed to parse).
+   */
+  private static Variation peek(Slot slot) {
+    if (!slot.task.isDone()) return null;
+    try {
+      return slot.task.get();
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Make sure a rule file and its neighbours in the ring are parsed next. Must be called
+   * with the lock held.
+   * @param idx index into <code>rules</code>
+   */
+  private void prefetchAround(int idx) {
+    // Neighbours first, so the current selection ends up as the most recently used one.
+    prefetch((idx+1)%rules.length,NEIGHBOUR);
+    prefetch((idx+rules.length-1)%rules.length,NEIGHBOUR);
+    prefetch(idx,URGENT);
+  }
+
+  /**
+   * Queue a rule file for parsing. Must be called with the lock held.
+   * @param idx index into <code>rules</code>
+   * @param priority how urgent
+   */
+  private void prefetch(int idx, int priority) {
+    Slot slot = slot(idx);
+    if (slot.task.isDone()) return;
+    Prefetch p = new Prefetch();
+    p.task=slot.task;
+    p.priority=priority;
+    p.sequence=sequence++;
+    pool.execute(p);
+  }
+}
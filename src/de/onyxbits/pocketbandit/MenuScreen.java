@@ -32,11 +32,14 @@ public class MenuScreen<T extends SlotMachine> extends StageScreen<T> implements
   private Button trialNo;
   private Button trialLater;
   
-  private TextureRegion background;
+  /**
+   * How fast the background scrolls (pixels per second, up and to the right)
+   */
+  private static final float SCROLLSPEED = 30;
+  
+  private TiledBackground background;
   private TextureAtlas localAtlas;
   private TextureAtlas globalAtlas;
-  private int offset=-64;
-  private int scale=0;
   
   
   //private SlotMachine slotGame; // Alias for BuereauScreen.game with proper type.
@@ -65,7 +68,7 @@ public class MenuScreen<T extends SlotMachine> extends StageScreen<T> implements
     music.setLooping(true);
     localAtlas = game.assetManager.get("textures/menuscreen.atlas",TextureAtlas.class);
     globalAtlas = game.assetManager.get("textures/global.atlas",TextureAtlas.class);
-    background = globalAtlas.findRegion("checkered");
+    background = new TiledBackground(globalAtlas.findRegion("checkered"),0,0);
     Image logo = new Image(localAtlas.findRegion("spr_logo"));
     Drawable up,down;
     up = new TextureRegionDrawable(localAtlas.findRegion("btn_play_up"));
@@ -223,21 +226,22 @@ public class MenuScreen<T extends SlotMachine> extends StageScreen<T> implements
   }
   
   public void renderBackground(float delta) {
-    game.spriteBatch.begin();
-    for (int x=offset;x<Gdx.graphics.getWidth();x+=64) {
-      for (int y=offset;y<Gdx.graphics.getHeight();y+=64) {
-        game.spriteBatch.draw(background,x,y);
-      }
-    }
-    scale++;
-    if (scale==2) {
-      offset+=1;
-      if (offset==0) {
-        offset=-64;
-      }
-      scale=0;
-    }
-    game.spriteBatch.end();
+    background.scrollBy(delta*SCROLLSPEED,delta*SCROLLSPEED);
+    // Stage.draw() leaves its camera on the shared batch, so the tiles always went through it
+    // (and scaled with the stage) from the second frame on. Now the first frame agrees.
+    background.draw(stage.getCamera());
+  }
+  
+  @Override
+  protected boolean isAnimating() {
+    // The background never stops scrolling.
+    return true;
+  }
+  
+  @Override
+  public void dispose() {
+    super.dispose();
+    if (background!=null) background.dispose();
   }
   
     
@@ -0,0 +1,265 @@
+package de.onyxbits.pocketbandit;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.scenes.scene2d.ui.Label;
+import com.badlogic.gdx.scenes.scene2d.ui.Widget;
+import com.badlogic.gdx.scenes.scene2d.utils.Cullable;
+import com.badlogic.gdx.scenes.scene2d.utils.Drawable;
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.ArrayList;
+
+/**
+ * Shows a paytable (followed by optional notes) inside a <code>ScrollPane</code>. Unlike a
+ * <code>Table</code>, this widget does not create any actors per row. Rows all have the same
+ * height, so the rows that are inside the visible area can be figured out directly and
+ * only those are drawn. Switching to a different paytable costs the same no matter how
+ * many rows it has.
+ * <p>
+ * What is shown is kept in a {@link Sheet}. Sheets can be built once and then be swapped in
+ * and out without allocating anything.
+ */
+public class PaytableWidget extends Widget implements Cullable {
+
+  /**
+   * Padding around a symbol
+   */
+  private static final float PADLEFT=2, PADRIGHT=2, PADTOP=2, PADBOTTOM=8;
+
+  /**
+   * Space between the symbols and the "=" sign
+   */
+  private static final float EQUALSPADLEFT=15;
+
+  /**
+   * Space between the "=" sign and the payout
+   */
+  private static final float EQUALSPADRIGHT=10;
+
+  /**
+   * Space between a value and the coin icon
+   */
+  private static final float COINPADLEFT=4;
+
+  /**
+   * Typical width of values (right aligned)
+   */
+  private static final String VALUEWIDTH="0000";
+
+  private BitmapFont font;
+  private Color fontColor;
+  private Drawable coin;
+
+  /**
+   * A paytable along with its notes, ready to be shown.
+   */
+  public static class Sheet {
+
+    /**
+     * Index into <code>symbols</code> by rule. See <code>Variation.paytable</code>
+     */
+    private int[][] paytable;
+
+    /**
+     * Symbols to show in the paytable
+     */
+    private Drawable[] symbols;
+
+    /**
+     * Payouts as text
+     */
+    private String[] payouts;
+
+    /**
+     * Text to show below the paytable
+     */
+    private ArrayList<String> notes = new ArrayList<String>();
+
+    /**
+     * Values to go along with the <code>notes</code>. -1 for no value.
+     */
+    private IntArray noteValues = new IntArray();
+
+    /**
+     * <code>noteValues</code> as text. Null for no value.
+     */
+    private ArrayList<String> noteValueText = new ArrayList<String>();
+
+    /**
+     * Create a sheet without notes
+     * @param paytable see <code>Variation.paytable</code>.
+     * @param symbols small version of the symbols. All must be of the same size.
+     */
+    public Sheet(int[][] paytable, Drawable[] symbols) {
+      this.paytable=paytable;
+      this.symbols=symbols;
+      payouts = new String[paytable.length];
+      for (int i=0;i<payouts.length;i++) {
+        payouts[i]=""+paytable[i][3];
+      }
+    }
+
+    /**
+     * Add a line of text below the paytable. Call before showing the sheet or call
+     * <code>invalidateHierarchy()</code> on the widget afterwards.
+     * @param text what to show
+     * @param value a number of coins to show along with the text or -1 for none.
+     */
+    public void addNote(String text, int value) {
+      notes.add(text);
+      noteValues.add(value);
+      noteValueText.add(value<0 ? null : ""+value);
+    }
+
+    /**
+     * Change the value of a note. Nothing is allocated if the value did not change.
+     * @param note index of the note (in the order they were added).
+     * @param value a number of coins to show along with the text or -1 for none.
+     */
+    public void setNoteValue(int note, int value) {
+      if (noteValues.get(note)==value) return;
+      noteValues.set(note,value);
+      noteValueText.set(note,value<0 ? null : ""+value);
+    }
+
+    /**
+     * Query the number of notes
+     * @return how many notes have been added.
+     */
+    public int getNoteCount() {
+      return notes.size();
+    }
+
+    private int getRowCount() {
+      return paytable.length+notes.size();
+    }
+  }
+
+  /**
+   * What is currently shown
+   */
+  private Sheet sheet = new Sheet(new int[0][],null);
+
+  /**
+   * Visible area as reported by the <code>ScrollPane</code>. Null if everything is visible.
+   */
+  private Rectangle cullingArea;
+
+  private float symbolWidth, symbolHeight, rowHeight, valueRight;
+
+  /**
+   * Create an empty paytable
+   * @param style font and color for text
+   * @param coin icon to put next to values
+   */
+  public PaytableWidget(Label.LabelStyle style, Drawable coin) {
+    this.font=style.font;
+    this.fontColor= style.fontColor==null ? Color.WHITE : style.fontColor;
+    this.coin=coin;
+  }
+
+  /**
+   * Show a different paytable (without any notes).
+   * @param paytable see <code>Variation.paytable</code>.
+   * @param symbols small version of the symbols. All must be of the same size.
+   */
+  public void setPaytable(int[][] paytable, Drawable[] symbols) {
+    setSheet(new Sheet(paytable,symbols));
+  }
+
+  /**
+   * Show a different sheet. The layout is only invalidated if the size changes.
+   * @param sheet what to show.
+   */
+  public void setSheet(Sheet sheet) {
+    float oldWidth = getPrefWidth();
+    float oldHeight = getPrefHeight();
+    this.sheet=sheet;
+    symbolWidth=sheet.symbols[0].getMinWidth();
+    symbolHeight=sheet.symbols[0].getMinHeight();
+    rowHeight=Math.max(PADTOP+symbolHeight+PADBOTTOM,font.getLineHeight());
+    valueRight=3*(PADLEFT+symbolWidth+PADRIGHT)+EQUALSPADLEFT+font.getBounds("=").width+EQUALSPADRIGHT
+      +font.getBounds(VALUEWIDTH).width;
+    if (oldWidth!=getPrefWidth() || oldHeight!=getPrefHeight()) invalidateHierarchy();
+  }
+
+  /**
+   * Add a line of text below the paytable
+   * @param text what to show
+   * @param value a number of coins to show along with the text or -1 for none.
+   */
+  public void addNote(String text, int value) {
+    sheet.addNote(text,value);
+    invalidateHierarchy();
+  }
+
+  @Override
+  public void setCullingArea(Rectangle cullingArea) {
+    this.cullingArea=cullingArea;
+  }
+
+  @Override
+  public float getPrefWidth() {
+    return valueRight+COINPADLEFT+coin.getMinWidth()+PADRIGHT;
+  }
+
+  @Override
+  public float getPrefHeight() {
+    return sheet.getRowCount()*rowHeight;
+  }
+
+  @Override
+  public void draw(SpriteBatch batch, float parentAlpha) {
+    validate();
+    int rows = sheet.getRowCount();
+    if (rows==0) return;
+
+    // Rows go from the top down.
+    float top = getHeight();
+    int first=0;
+    int last=rows-1;
+    if (cullingArea!=null) {
+      first=Math.max(first,(int)((top-cullingArea.y-cullingArea.height)/rowHeight));
+      last=Math.min(last,(int)((top-cullingArea.y)/rowHeight));
+    }
+
+    Color color = getColor();
+    batch.setColor(color.r,color.g,color.b,color.a*parentAlpha);
+    font.setColor(fontColor.r,fontColor.g,fontColor.b,fontColor.a*color.a*parentAlpha);
+    float x = getX();
+    float textOffset = rowHeight/2+font.getCapHeight()/2;
+    for (int row=first;row<=last;row++) {
+      float y = getY()+top-(row+1)*rowHeight;
+      if (row<sheet.paytable.length) {
+        int[] rule = sheet.paytable[row];
+        float cx = x;
+        for (int i=0;i<3;i++) {
+          cx+=PADLEFT;
+          if (rule[i]!=-1) {
+            // -1 is the wild symbol == empty space
+            sheet.symbols[rule[i]].draw(batch,cx,y+PADBOTTOM,symbolWidth,symbolHeight);
+          }
+          cx+=symbolWidth+PADRIGHT;
+        }
+        font.draw(batch,"=",cx+EQUALSPADLEFT,y+textOffset);
+        drawValue(batch,sheet.payouts[row],x,y,textOffset);
+      }
+      else {
+        int note = row-sheet.paytable.length;
+        font.draw(batch,sheet.notes.get(note),x+PADLEFT,y+textOffset);
+        if (sheet.noteValueText.get(note)!=null) drawValue(batch,sheet.noteValueText.get(note),x,y,textOffset);
+      }
+    }
+  }
+
+  /**
+   * Draw a value, right aligned, followed by a coin
+   */
+  private void drawValue(SpriteBatch batch, String value, float x, float y, float textOffset) {
+    font.draw(batch,value,x+valueRight-font.getBounds(value).width,y+textOffset);
+    coin.draw(batch,x+valueRight+COINPADLEFT,y+rowHeight/2-coin.getMinHeight()/2,coin.getMinWidth(),coin.getMinHeight());
+  }
+}
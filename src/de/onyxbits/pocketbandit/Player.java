@@ -2,6 +2,8 @@ package de.onyxbits.pocketbandit;
 
 import com.badlogic.gdx.*;
 
+import java.util.Random;
+
 
 /**
  * Game state. Note: global variables are protected for performance sake. 
@@ -55,22 +57,87 @@ public class Player {
   protected int freeloaderCount;
   
   /**
-   * <code>Symbol</code>S on the payline. Only stable when the machine is idle.
+   * Symbols on the payline (see <code>roll()</code>).
    */
   protected int[] payline = new int[3];
   
+  /**
+   * How many symbols were picked for the <code>payline</code> so far.
+   */
+  private int draws;
+  
+  /**
+   * What the last round paid out according to the paytable (see <code>settle()</code>).
+   */
+  protected int payout;
+  
+  /**
+   * What the last round paid out as a lucky coin bonus (see <code>settle()</code>).
+   */
+  protected int bonus;
+  
+  /**
+   * What the last round paid out from the progressive jackpot (see <code>settle()</code>).
+   */
+  protected int jackpotPayout;
+  
+  /**
+   * Persistent storage for credits and highscore. May be null.
+   */
+  private Preferences prefs;
+  
+  /**
+   * Source of randomness for this game state.
+   */
+  private Random rng;
+  
+  /**
+   * Where to report new highscores to. May be null.
+   */
+  private Leaderboard leaderboard;
+  
+  /**
+   * Identifies this player on the <code>leaderboard</code>.
+   */
+  private int leaderboardId;
+  
+  /**
+   * The progressive jackpot this player feeds. May be null.
+   */
+  private Jackpot jackpot;
+  
+  /**
+   * Whether to persist after every round.
+   */
+  private boolean autoPersist=true;
+  
+  /**
+   * Preference keys for credits, highscore and jackpot (see <code>setKeys()</code>).
+   */
+  private String creditsKey, highscoreKey, jackpotKey;
+  
   /**
    * Construct a new game state
    * @param variation rules to use
-   * @param credit Cash on hand
+   * @param prefs storage to persist credits and highscore in. May be null to not persist.
+   * @param rng source of randomness for this player.
    */
-  public Player(Variation variation) {
-    if (variation==null) throw new NullPointerException(); // Crash early
+  public Player(Variation variation, Preferences prefs, Random rng) {
+    if (variation==null || rng==null) throw new NullPointerException(); // Crash early
     this.variation = variation;
+    this.prefs=prefs;
+    this.rng=rng;
+    setKeys();
     // We start out with either the seed capital or the previous winnings. Whichever is higher
-    credit=Math.max(variation.seedCapital,SlotMachine.prefs.getInteger(toKey(true),0));
-    highscore=SlotMachine.prefs.getInteger(toKey(false),credit);
-    luckyCoin = SlotMachine.rng.nextInt(3);
+    if (prefs!=null) {
+      credit=Math.max(variation.seedCapital,prefs.getInteger(creditsKey,0));
+      highscore=prefs.getInteger(highscoreKey,credit);
+    }
+    else {
+      credit=variation.seedCapital;
+      highscore=credit;
+    }
+    luckyCoin = rng.nextInt(3);
   }
   
   /**
@@ -83,24 +150,59 @@ public class Player {
     streakOfLuck=0;
     streakOfBadLuck=0;
     round=0;
-    luckyCoin = SlotMachine.rng.nextInt(3);
+    luckyCoin = rng.nextInt(3);
   }
    
   
   /**
-   * Transform a varition name into a key name (for persisting credits and highscore)
-   * @param ch true to get the key for saving cretis, false to get the key for highscores.
-   * @return the variation's name in lowercase and with underscores replacing spaces and a suffix
-   * accoring to ch.
+   * Continue with a revised version of the rules (e.g. after the rule file was edited).
+   * Credits, highscore and streaks carry over.
+   * @param variation the new rules. Should describe the same machine.
    */
-  private String toKey(boolean ch) {
-    if (ch) {
-      return "variation."+variation.machineName.replace(" ","_").toLowerCase()+".credits";
-    }
-    else {
-      return "variation."+variation.machineName.replace(" ","_").toLowerCase()+".highscore";
-      
-    }
+  protected void setVariation(Variation variation) {
+    if (variation==null) throw new NullPointerException();
+    this.variation=variation;
+    setKeys();
+  }
+  
+  /**
+   * Report highscores to a leaderboard from now on.
+   * @param leaderboard where to report to. May be null to stop reporting.
+   * @param id how the player is known on the board.
+   */
+  public void enterLeaderboard(Leaderboard leaderboard, int id) {
+    this.leaderboard=leaderboard;
+    this.leaderboardId=id;
+    if (leaderboard!=null) leaderboard.submit(variation.machineName,id,highscore);
+  }
+  
+  /**
+   * Feed a progressive jackpot from now on (and take part in winning it). Only has an effect
+   * if the <code>Variation</code> has a jackpot.
+   * @param jackpot the jackpot to feed. May be null to stop feeding.
+   */
+  public void joinJackpot(Jackpot jackpot) {
+    this.jackpot = variation.jackpotShare>0 ? jackpot : null;
+  }
+  
+  /**
+   * Derive the preference keys from the variation's name. Done once per variation, so
+   * <code>persist()</code> does not have to build strings every round.
+   */
+  private void setKeys() {
+    creditsKey=toKey(variation,"credits");
+    highscoreKey=toKey(variation,"highscore");
+    jackpotKey=toKey(variation,"jackpot");
+  }
+  
+  /**
+   * Transform a variation name into a key name
+   * @param variation the variation in question
+   * @param suffix what the key is for
+   * @return the variation's name in lowercase and with underscores replacing spaces and the suffix.
+   */
+  static String toKey(Variation variation, String suffix) {
+    return "variation."+variation.machineName.replace(" ","_").toLowerCase()+"."+suffix;
   }
   
   /**
@@ -117,6 +219,9 @@ public class Player {
     }
     bet=amount;
     credit-=bet;
+    if (jackpot!=null && amount>0) {
+      jackpot.contribute(Math.round(amount*variation.jackpotShare*10));
+    }
   }
   
   /**
@@ -129,10 +234,9 @@ public class Player {
     streakOfBadLuck++;
     streakOfLuck=0;
     round++;
-    SlotMachine.prefs.putInteger(toKey(true),credit);
-    SlotMachine.prefs.putInteger(toKey(false),highscore);
+    if (autoPersist) persist();
     if (round % variation.luckyCoinReRoll == 0) {
-      luckyCoin = SlotMachine.rng.nextInt(3);
+      luckyCoin = rng.nextInt(3);
     }
   }
   
@@ -148,11 +252,70 @@ public class Player {
     credit+=prize;
     streakOfBadLuck=0;
     streakOfLuck++;
-    if (credit>highscore) highscore=credit;
-    SlotMachine.prefs.putInteger(toKey(true),credit);
-    SlotMachine.prefs.putInteger(toKey(false),highscore);
+    if (credit>highscore) {
+      highscore=credit;
+      if (leaderboard!=null) leaderboard.submit(variation.machineName,leaderboardId,highscore);
+    }
+    if (autoPersist) persist();
     if (round % variation.luckyCoinReRoll == 0) {
-      luckyCoin = SlotMachine.rng.nextInt(3);
+      luckyCoin = rng.nextInt(3);
+    }
+  }
+  
+  /**
+   * Put random symbols on the payline (for playing a round without reels).
+   */
+  public void roll() {
+    for (int i=0;i<payline.length;i++) {
+      payline[i]=variation.pick(i,rng,draws++);
+    }
+  }
+  
+  /**
+   * Evaluate the <code>payline</code> against the current <code>bet</code> and mark the
+   * round up as won or lost. Afterwards, <code>payout</code>, <code>bonus</code> and
+   * <code>jackpotPayout</code> tell what was won.
+   * @param luckyCoinPlayed true if the lucky coin was part of the bet.
+   * @return true if the payline matched the paytable (even if nothing was won because
+   * nothing was bet). The jackpot is only won if something was bet.
+   */
+  public boolean settle(boolean luckyCoinPlayed) {
+    payout=variation.getPayout(bet,payline);
+    bonus=0;
+    jackpotPayout=0;
+    if (payout<0) {
+      payout=0;
+      loose();
+      return false;
+    }
+    if (payout>0 && luckyCoinPlayed) {
+      bonus=variation.getBonus(bet,rng);
+    }
+    if (jackpot!=null && bet>0 && variation.isJackpot(payline)) {
+      jackpotPayout=jackpot.award();
+    }
+    win(payout+bonus+jackpotPayout);
+    return true;
+  }
+  
+  /**
+   * Control when credits and highscore are persisted. Turning automatic persistence off is
+   * meant for playing many rounds in a batch.
+   * @param autoPersist true to persist after every round (default), false to only persist
+   * on calling <code>persist()</code>.
+   */
+  public void setAutoPersist(boolean autoPersist) {
+    this.autoPersist=autoPersist;
+  }
+  
+  /**
+   * Write credits and highscore to the storage (if any).
+   */
+  public void persist() {
+    if (prefs!=null) {
+      prefs.putInteger(creditsKey,credit);
+      prefs.putInteger(highscoreKey,highscore);
+      if (jackpot!=null) prefs.putLong(jackpotKey,jackpot.getPool());
     }
   }
 }
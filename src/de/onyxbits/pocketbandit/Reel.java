@@ -0,0 +1,231 @@
+package de.onyxbits.pocketbandit;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.scenes.scene2d.Actor;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+
+import java.util.Random;
+
+/**
+ * A reel with three visible symbols. A single actor draws all of them, so there is only one
+ * <code>act()</code> per reel and the symbols go into the batch back to back. Inside a
+ * non-transform <code>ClippingGroup</code>, the symbols are cut to the clipping area.
+ * <p>
+ * The reel does not decide anything. It is told which symbol to stop on when it is set in
+ * motion. All other symbols passing by are just decoration.
+ */
+class Reel extends Actor {
+
+  /**
+   * Velocity from which on the blurred symbols are shown (if there are any).
+   */
+  public static final int BLURVELOCITY = 8;
+
+  /**
+   * For rolling new symbols
+   */
+  private Variation variation;
+
+  /**
+   * Source of randomness for decorating the reel. Kept apart from the game's randomness,
+   * so how the reels are animated can not influence any outcome.
+   */
+  private Random rng = new Random();
+
+  /**
+   * The reel (0-2) of the machine this is
+   */
+  private int reel;
+
+  /**
+   * Symbol faces
+   */
+  private TextureRegion[] symbols;
+
+  /**
+   * Motion blurred symbol faces. May be null.
+   */
+  private BlurredStrip blurred;
+
+  /**
+   * Indices into <code>symbols</code> of the faces that are showing, bottom to top.
+   * <code>faces[1]</code> is on the payline when the reel is at rest.
+   */
+  private int[] faces = new int[3];
+
+  /**
+   * How far (in pixels) the faces are scrolled up. 0 when in a stop position.
+   */
+  private int offset;
+
+  /**
+   * How many stops have still to pass before stopping to spin
+   */
+  private int remainingStops;
+  
+  /**
+   * Index into <code>symbols</code>: the face to stop on.
+   */
+  private int target;
+
+  /**
+   * Cached height of the symbol face. All symbols in the machine must have the same size.
+   */
+  private int symbolHeight;
+
+  /**
+   * How fast to scroll symbols by (pixels per <code>StageScreen.STEP</code>). Condition:
+   * symbolHeight % velocity==0
+   */
+  private int velocity;
+
+  /**
+   * Call reference (to notify when the reel stops)
+   */
+  private GambleScreen gambleScreen;
+
+  /**
+   * Only use this constructor!
+   * @param variation game rules
+   * @param symbols <code>TextureRegion</code> version of <code>Variation.SYMBOLNAMES</code>. Symbol
+   * heights must be a multiple of 2.
+   * @param blurred motion blurred version of <code>symbols</code>. May be null.
+   * @param initial indices into <code>symbols</code>: The faces to show initially (bottom to top).
+   * @param reel which reel of the machine this is.
+   * @param gambleScreen callback to notify about the reel starting/stopping.
+   */
+  public Reel(Variation variation, TextureRegion[] symbols, BlurredStrip blurred, int[] initial, int reel, GambleScreen gambleScreen) {
+    this.reel=reel;
+    this.gambleScreen=gambleScreen;
+    System.arraycopy(initial,0,faces,0,faces.length);
+    setVariation(variation,symbols,blurred);
+  }
+
+  /**
+   * Move the reel. Called at a fixed rate (see <code>StageScreen.step()</code>), so
+   * spinning takes the same time no matter the frame rate.
+   */
+  public void step() {
+    if (remainingStops<=0) {
+      return;
+    }
+
+    if (offset==0) {
+      // The bottom face scrolled out of sight -> it comes back on top with a new symbol. The
+      // one coming in two stops before the end is the one that ends up on the payline.
+      faces[0]=faces[1];
+      faces[1]=faces[2];
+      faces[2]= remainingStops==2 ? target : variation.pickRandom(reel,rng);
+      offset=symbolHeight;
+    }
+    offset-=velocity;
+
+    if (offset==0) {
+      remainingStops--;
+      if (remainingStops==0) {
+        gambleScreen.inMotion(this,false);
+      }
+    }
+  }
+
+  @Override
+  public void draw(SpriteBatch batch, float parentAlpha) {
+    Color color = getColor();
+    batch.setColor(color.r, color.g, color.b, color.a * parentAlpha);
+    float x = getX();
+    float y = getY()+offset;
+    if (remainingStops>0) {
+      // Draw where the reel is in between two steps.
+      y-=velocity*gambleScreen.getStepAlpha();
+    }
+    float width = getWidth();
+    boolean blur = blurred!=null && remainingStops>0 && velocity>=BLURVELOCITY;
+    ClippingGroup clipper = getParent() instanceof ClippingGroup ? (ClippingGroup)getParent() : null;
+    for (int i=0;i<faces.length;i++) {
+      TextureRegion face = blur ? blurred.get(faces[i]) : symbols[faces[i]];
+      if (clipper!=null) {
+        clipper.drawClipped(batch,face,x,y,width,symbolHeight);
+      }
+      else {
+        batch.draw(face,x,y,width,symbolHeight);
+      }
+      y+=symbolHeight;
+    }
+  }
+
+  /**
+   * Switch to different symbols and/or rules. Only call while the reel is at rest.
+   * @param variation game rules
+   * @param symbols <code>TextureRegion</code> version of <code>Variation.SYMBOLNAMES</code>.
+   * @param blurred motion blurred version of <code>symbols</code>. May be null.
+   */
+  protected void setVariation(Variation variation, TextureRegion[] symbols, BlurredStrip blurred) {
+    this.variation=variation;
+    this.symbols=symbols;
+    this.blurred=blurred;
+    for (int i=0;i<faces.length;i++) {
+      if (faces[i]>=symbols.length) {
+        // The symbol we are showing no longer exists.
+        faces[i]=0;
+      }
+    }
+    symbolHeight=symbols[0].getRegionHeight();
+    setSize(symbols[0].getRegionWidth(),faces.length*symbolHeight);
+  }
+
+  /**
+   * Bring the reel to a halt ASAP (that is: as soon as the target face can be brought to the
+   * payline). Note: For safety reasons, this method does nothing if the reel is currently
+   * in a stop position (braking in a stop position would jam the reels).
+   * @return true if the reel was decelerated successfully and will stop
+   * ASAP.
+   */
+  public boolean handbrake() {
+    if (offset==0) return false;
+    // Finish this stop, bring in the target on the next and stop on the one after.
+    remainingStops=Math.min(remainingStops,3);
+    return true;
+  }
+
+  /**
+   * Set the reel in motion
+   * @param stops after how many stops to come to rest. Must be at leat 2.
+   * @param velocity pixels to scroll per step.
+   * @param target index into <code>Variation.SYMBOLNAMES</code>: the face to stop on.
+   */
+  protected void spin(int stops, int velocity, int target) {
+    remainingStops=stops;
+    this.target=target;
+    this.velocity=velocity;
+    if (stops>0) {
+      gambleScreen.inMotion(this,true);
+    }
+  }
+
+  /**
+   * Put a face on the payline right away (no animation). Only call while the reel is at rest.
+   * @param target index into <code>Variation.SYMBOLNAMES</code>: the face to show.
+   */
+  protected void show(int target) {
+    faces[0]=variation.pickRandom(reel,rng);
+    faces[1]=target;
+    faces[2]=variation.pickRandom(reel,rng);
+  }
+
+  /**
+   * Query the reel
+   * @return which reel of the machine this is.
+   */
+  protected int getReel() {
+    return reel;
+  }
+
+  /**
+   * Query the face on the payline. Only meaningful when the reel is at rest.
+   * @return index into <code>Variation.SYMBOLNAMES</code>
+   */
+  protected int getFace() {
+    return faces[1];
+  }
+}
@@ -0,0 +1,112 @@
+package de.onyxbits.pocketbandit;
+
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.files.FileHandle;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Index of the rule definition files. The manifest is generated at build time (see
+ * <code>custom_rules.xml</code>), so the <code>Loader</code> does not have to list the
+ * rules directory (slow on Android) and knows the names of all machines before parsing
+ * any rule file.
+ */
+public class RuleManifest {
+
+  /**
+   * Where the manifest is kept (relative to the assets).
+   */
+  public static final String FILENAME = "rules.manifest";
+
+  /**
+   * Summary of a single rule file
+   */
+  public static class Entry {
+
+    /**
+     * Path of the rule file (relative to the assets)
+     */
+    public String path;
+
+    /**
+     * Same as <code>Variation.machineName</code>
+     */
+    public String machineName;
+
+    /**
+     * Number of symbols on the reels
+     */
+    public int symbols;
+
+    /**
+     * Number of rules in the paytable
+     */
+    public int rules;
+
+    /**
+     * Same as <code>Variation.seedCapital</code>
+     */
+    public int seedCapital;
+
+    /**
+     * Same as <code>Variation.luckyCoinBonus</code>
+     */
+    public int luckyCoinBonus;
+
+    /**
+     * Same as <code>Variation.jackpotShare</code>
+     */
+    public float jackpotShare;
+  }
+
+  /**
+   * All rule files, sorted by path.
+   */
+  public Entry[] entries;
+
+  /**
+   * Read a manifest
+   * @param file the manifest file
+   * @return the manifest or null if there is none.
+   */
+  public static RuleManifest read(FileHandle file) {
+    if (!file.exists()) return null;
+    return new Json().fromJson(RuleManifest.class,file);
+  }
+
+  /**
+   * Build a manifest. This is a build tool, the game itself never calls it.
+   * @param args the rules directory and the manifest file to write.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length!=2) {
+      System.err.println("Usage: RuleManifest <rules directory> <manifest file>");
+      System.exit(1);
+    }
+    File dir = new File(args[0]);
+    String prefix = dir.getName()+"/";
+    File[] files = dir.listFiles();
+    if (files==null) throw new IllegalArgumentException("Not a directory: "+args[0]);
+    // Same order as Loader.rescan() would produce from a directory listing.
+    Arrays.sort(files);
+
+    Json json = new Json();
+    RuleManifest manifest = new RuleManifest();
+    manifest.entries = new Entry[files.length];
+    for (int i=0;i<files.length;i++) {
+      // Parsing catches broken rule files at build time rather than on the device.
+      Variation v = json.fromJson(Variation.class,new FileHandle(files[i]));
+      Entry e = new Entry();
+      e.path=prefix+files[i].getName();
+      e.machineName=v.machineName;
+      e.symbols=v.symbolNames.length;
+      e.rules=v.paytable.length;
+      e.seedCapital=v.seedCapital;
+      e.luckyCoinBonus=v.luckyCoinBonus;
+      e.jackpotShare=v.jackpotShare;
+      manifest.entries[i]=e;
+    }
+    new FileHandle(new File(args[1])).writeString(json.prettyPrint(manifest),false);
+  }
+}
@@ -0,0 +1,475 @@
+package de.onyxbits.pocketbandit;
+
+import com.badlogic.gdx.Preferences;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs any number of independent game sessions side by side (e.g. when the engine is
+ * used as a shared service rather than on a single device).
+ * <p>
+ * Sessions are distributed over a fixed number of stripes, each guarded by its own lock.
+ * Rounds on sessions that live on different stripes never contend with each other, so
+ * throughput scales with the number of cores. Every stripe keeps its sessions in a
+ * <code>SessionStore</code> (rather than in <code>Player</code> objects) and has its own
+ * random number generator. A session's id tells its stripe (low bits) and its position in
+ * the stripe's store (high bits).
+ * <p>
+ * The libGDX front end is just another client. It plays on <code>Player</code> objects
+ * (which it needs for showing the reels) that it gets from <code>createPlayer()</code>, so
+ * they share the jackpots and the leaderboard with the sessions.
+ */
+public class SessionHost {
+
+  /**
+   * Marker for <code>snapshot()</code>/<code>restore()</code>
+   */
+  private static final int MAGIC = 0x50425348;
+
+  /**
+   * Session partitions. Length is always a power of two.
+   */
+  private Stripe[] stripes;
+
+  /**
+   * log2 of <code>stripes.length</code>
+   */
+  private int shift;
+
+  /**
+   * For handing out session ids.
+   */
+  private AtomicInteger nextId = new AtomicInteger();
+
+  /**
+   * Ranks all sessions by highscore
+   */
+  private Leaderboard leaderboard;
+
+  /**
+   * Progressive jackpots by <code>Variation.machineName</code>
+   */
+  private HashMap<String,Jackpot> jackpots = new HashMap<String,Jackpot>();
+
+  /**
+   * All rules that sessions were opened with. Sessions refer to them by index. Only
+   * replaced (never modified) while holding the lock on <code>stripes</code>.
+   */
+  private volatile Variation[] variations = new Variation[0];
+
+  /**
+   * The progressive jackpots of the <code>variations</code> (null where there is none).
+   * Replaced along with them.
+   */
+  private volatile Jackpot[] variationJackpots = new Jackpot[0];
+
+  /**
+   * A partition of sessions. Doubles as the lock for the sessions it contains.
+   */
+  private static class Stripe {
+
+    /**
+     * Created when the first session is opened on the stripe.
+     */
+    SessionStore store;
+
+    // Reused for playing single rounds, so play() creates no garbage.
+    int[] ids = new int[1];
+    int[] slots = new int[1];
+    int[] coins = new int[1];
+    int[] prizes = new int[1];
+  }
+
+  /**
+   * Create a host with a reasonable number of stripes for the machine we are running on.
+   */
+  public SessionHost() {
+    this(Runtime.getRuntime().availableProcessors()*4,1000);
+  }
+
+  /**
+   * Create a new host
+   * @param concurrency number of sessions that may play a round simultaneously. Will be
+   * rounded up to the next power of two.
+   * @param ranked how many sessions to rank per leaderboard.
+   */
+  public SessionHost(int concurrency, int ranked) {
+    leaderboard = new Leaderboard(ranked);
+    int size=1;
+    while (size<concurrency) {
+      size<<=1;
+      shift++;
+    }
+    stripes = new Stripe[size];
+    for (int i=0;i<size;i++) {
+      stripes[i]=new Stripe();
+    }
+  }
+
+  /**
+   * Open a new session
+   * @param variation the rules to play by. <code>Variation</code>S may be shared between
+   * sessions.
+   * @return the id of the new session.
+   */
+  public int open(Variation variation) {
+    int idx = register(variation);
+    int id = nextId.getAndIncrement();
+    Stripe stripe = stripeOf(id);
+    synchronized(stripe) {
+      SessionStore store = storeOf(stripe,id);
+      store.open(id>>>shift,idx);
+      leaderboard.submit(variation.machineName,id,store.getHighscore(id>>>shift));
+    }
+    return id;
+  }
+
+  /**
+   * Hand out a session id without opening a session. Meant for clients that play on their
+   * own <code>Player</code> objects (see <code>createPlayer()</code>).
+   * @return an id no session will ever have.
+   */
+  public int reserve() {
+    return nextId.getAndIncrement();
+  }
+
+  /**
+   * Close a session. Its state is forgotten.
+   * @param id the session to close
+   */
+  public void close(int id) {
+    Stripe stripe = stripeOf(id);
+    synchronized(stripe) {
+      if (stripe.store!=null) stripe.store.close(id>>>shift);
+    }
+  }
+
+  /**
+   * Play one round without any reels (the outcome is rolled directly).
+   * @param id the session to play on
+   * @param coins which coin slots are bet as a bitmask (bit 0 for the first coin, bit 2 for
+   * the third). The number of bits set is the number of coins bet. The lucky coin is played
+   * if its bit is set.
+   * @return the prize (payout plus bonus plus jackpot) or -1 if the round was lost.
+   * @throws IllegalArgumentException if there is no such session.
+   */
+  public int play(int id, int coins) {
+    Stripe stripe = stripeOf(id);
+    synchronized(stripe) {
+      stripe.ids[0]=id;
+      stripe.coins[0]=coins;
+      playStripe(stripe,stripe.ids,stripe.slots,stripe.coins,stripe.prizes,1);
+      return stripe.prizes[0];
+    }
+  }
+
+  /**
+   * Play one round on each of a batch of sessions. The batch is split up by stripe and
+   * every stripe plays its share in one go, column by column.
+   * @param ids the sessions to play on
+   * @param coins which coin slots each session bets (see <code>play(int,int)</code>).
+   * @param prizes receives the prize of each session or -1 if its round was lost.
+   * @param count number of entries to process
+   * @throws IllegalArgumentException if one of the sessions does not exist. Sessions on
+   * other stripes may have played their round already.
+   */
+  public void play(int[] ids, int[] coins, int[] prizes, int count) {
+    // Sort the batch by stripe (counting sort, so entries of a stripe keep their order).
+    int[] start = new int[stripes.length+1];
+    for (int i=0;i<count;i++) {
+      start[(ids[i] & (stripes.length-1))+1]++;
+    }
+    for (int i=0;i<stripes.length;i++) {
+      start[i+1]+=start[i];
+    }
+    int[] order = new int[count];
+    int[] fill = Arrays.copyOf(start,stripes.length);
+    for (int i=0;i<count;i++) {
+      order[fill[ids[i] & (stripes.length-1)]++]=i;
+    }
+    int[] sIds = new int[count];
+    int[] sSlots = new int[count];
+    int[] sCoins = new int[count];
+    int[] sPrizes = new int[count];
+    for (int s=0;s<stripes.length;s++) {
+      int n=start[s+1]-start[s];
+      if (n==0) continue;
+      for (int i=0;i<n;i++) {
+        sIds[i]=ids[order[start[s]+i]];
+        sCoins[i]=coins[order[start[s]+i]];
+      }
+      synchronized(stripes[s]) {
+        playStripe(stripes[s],sIds,sSlots,sCoins,sPrizes,n);
+      }
+      for (int i=0;i<n;i++) {
+        prizes[order[start[s]+i]]=sPrizes[i];
+      }
+    }
+  }
+
+  /**
+   * Play one round on sessions that all live on the same stripe. Must hold the stripe's lock.
+   * @param ids session ids
+   * @param slots receives the positions of the sessions in the stripe's store.
+   */
+  private void playStripe(Stripe stripe, int[] ids, int[] slots, int[] coins, int[] prizes, int count) {
+    SessionStore store = stripe.store;
+    for (int i=0;i<count;i++) {
+      slots[i]=ids[i]>>>shift;
+      if (store==null || !store.isOpen(slots[i])) {
+        throw new IllegalArgumentException("No such session: "+ids[i]);
+      }
+    }
+    store.gamble(slots,coins,count);
+    store.roll(slots,coins,prizes,count);
+    store.applyRounds(slots,prizes,count);
+    Variation[] rules = variations;
+    for (int i=0;i<count;i++) {
+      int slot=slots[i];
+      // A prize that leaves the credit at the highscore just raised it.
+      if (prizes[i]>0 && store.getCredit(slot)==store.getHighscore(slot)) {
+        leaderboard.submit(rules[store.getVariation(slot)].machineName,ids[i],store.getHighscore(slot));
+      }
+    }
+  }
+
+  /**
+   * Query how much money a session has on hand.
+   * @param id the session in question.
+   * @return the credit or -1 if there is no such session.
+   */
+  public int getCredit(int id) {
+    Stripe stripe = stripeOf(id);
+    synchronized(stripe) {
+      if (stripe.store==null || !stripe.store.isOpen(id>>>shift)) return -1;
+      return stripe.store.getCredit(id>>>shift);
+    }
+  }
+
+  /**
+   * Query the leaderboard. Boards are named after <code>Variation.machineName</code>,
+   * sessions are known by their id.
+   * @return the board on which all sessions are ranked.
+   */
+  public Leaderboard getLeaderboard() {
+    return leaderboard;
+  }
+
+  /**
+   * Create (or restore from the preferences) a game state that is played outside of the
+   * host, e.g. by the front end.
+   * @param variation rules to use
+   * @param prefs storage to persist credits and highscore in. May be null to not persist.
+   * The jackpot is restored from there as well, unless the host already has it.
+   * @param rng source of randomness for this player.
+   * @param id how the player is known on the leaderboard (see <code>reserve()</code>).
+   * Players that belong to the same person should share an id, so they are ranked only
+   * once on the <code>GLOBAL</code> board.
+   * @return a player that feeds the jackpot of its variation and reports its highscores to
+   * the host's leaderboard.
+   */
+  public Player createPlayer(Variation variation, Preferences prefs, Random rng, int id) {
+    Player ret = new Player(variation,prefs,rng);
+    ret.enterLeaderboard(leaderboard,id);
+    ret.joinJackpot(getJackpot(variation,prefs));
+    return ret;
+  }
+
+  /**
+   * Get the progressive jackpot that all sessions playing a <code>Variation</code> share.
+   * @param variation the rules in question
+   * @return the jackpot or null if the variation does not have one.
+   */
+  public Jackpot getJackpot(Variation variation) {
+    return getJackpot(variation,null);
+  }
+
+  /**
+   * Get a progressive jackpot
+   * @param variation the rules in question
+   * @param prefs where to restore the jackpot from if it does not exist yet. May be null.
+   * @return the jackpot or null if the variation does not have one.
+   */
+  private Jackpot getJackpot(Variation variation, Preferences prefs) {
+    if (variation.jackpotShare<=0) return null;
+    synchronized(jackpots) {
+      Jackpot ret = jackpots.get(variation.machineName);
+      if (ret==null) {
+        long pool = prefs==null ? 0 : prefs.getLong(Player.toKey(variation,"jackpot"),0);
+        ret = new Jackpot(variation.jackpotSeed,pool);
+        jackpots.put(variation.machineName,ret);
+      }
+      return ret;
+    }
+  }
+
+  /**
+   * Write all sessions to a buffer. Stripes are written one after the other, so rounds
+   * that are played meanwhile may or may not be included (but never half of one).
+   * @return the snapshot, ready for reading.
+   */
+  public ByteBuffer snapshot() {
+    synchronized(stripes) {
+      Variation[] rules = variations;
+      byte[][] names = new byte[rules.length][];
+      int size=16;
+      for (int i=0;i<rules.length;i++) {
+        names[i]=toBytes(rules[i].machineName);
+        size+=2+names[i].length;
+      }
+      ByteBuffer[] parts = new ByteBuffer[stripes.length];
+      for (int i=0;i<stripes.length;i++) {
+        synchronized(stripes[i]) {
+          SessionStore store = storeOf(stripes[i],i);
+          parts[i]=ByteBuffer.allocate(store.snapshotSize());
+          store.snapshot(parts[i]);
+        }
+        parts[i].flip();
+        size+=parts[i].remaining();
+      }
+      ByteBuffer ret = ByteBuffer.allocate(size);
+      ret.putInt(MAGIC);
+      ret.putInt(stripes.length);
+      ret.putInt(nextId.get());
+      ret.putInt(rules.length);
+      for (int i=0;i<names.length;i++) {
+        ret.putShort((short)names[i].length);
+        ret.put(names[i]);
+      }
+      for (int i=0;i<parts.length;i++) {
+        ret.put(parts[i]);
+      }
+      ret.flip();
+      return ret;
+    }
+  }
+
+  /**
+   * Replace all sessions with the contents of a snapshot. Meant for starting up, before any
+   * session is opened.
+   * @param in buffer as returned by <code>snapshot()</code>.
+   * @param rules the rules to play by. Sessions are matched up with them by
+   * <code>machineName</code>.
+   * @throws IllegalArgumentException if the buffer does not contain a complete snapshot of a
+   * host with the same number of stripes or refers to a machine that is not in
+   * <code>rules</code>. Sessions may have been lost in that case.
+   */
+  public void restore(ByteBuffer in, Variation... rules) {
+    synchronized(stripes) {
+      if (in.remaining()<16 || in.getInt()!=MAGIC) throw new IllegalArgumentException("Not a host snapshot");
+      if (in.getInt()!=stripes.length) throw new IllegalArgumentException("Stripe count mismatch");
+      int next=in.getInt();
+      int n=in.getInt();
+      if (n<0 || n>Short.MAX_VALUE) throw new IllegalArgumentException("Corrupt host snapshot");
+      Variation[] tmp = new Variation[n];
+      Jackpot[] tmpJackpots = new Jackpot[n];
+      for (int i=0;i<n;i++) {
+        int len = in.getShort() & 0xffff;
+        if (len>in.remaining()) throw new IllegalArgumentException("Truncated host snapshot");
+        byte[] name = new byte[len];
+        in.get(name);
+        String machineName = fromBytes(name);
+        for (Variation v: rules) {
+          if (v.machineName.equals(machineName)) tmp[i]=v;
+        }
+        if (tmp[i]==null) throw new IllegalArgumentException("Unknown machine: "+machineName);
+        tmpJackpots[i]=getJackpot(tmp[i]);
+      }
+      variations=tmp;
+      variationJackpots=tmpJackpots;
+      for (int i=0;i<stripes.length;i++) {
+        synchronized(stripes[i]) {
+          SessionStore store = storeOf(stripes[i],i);
+          store.setRules(tmp,tmpJackpots);
+          store.restore(in);
+        }
+      }
+      nextId.set(next);
+    }
+  }
+
+  /**
+   * Create the random number generator for a stripe. All sessions on the stripe share it.
+   * @param stripe index of the stripe in question
+   * @return Default implementation returns a time seeded generator.
+   */
+  protected Random createRandom(int stripe) {
+    return new Random(System.nanoTime()+stripe);
+  }
+
+  /**
+   * Add rules to the ones sessions are played by (if they are not there yet).
+   * @param variation the rules
+   * @return index of the rules
+   */
+  private int register(Variation variation) {
+    Variation[] rules = variations;
+    for (int i=0;i<rules.length;i++) {
+      if (rules[i]==variation) return i;
+    }
+    synchronized(stripes) {
+      rules = variations;
+      for (int i=0;i<rules.length;i++) {
+        if (rules[i]==variation) return i;
+      }
+      if (rules.length==Short.MAX_VALUE) throw new IllegalStateException("Too many variations");
+      Variation[] tmp = Arrays.copyOf(rules,rules.length+1);
+      Jackpot[] tmpJackpots = Arrays.copyOf(variationJackpots,rules.length+1);
+      tmp[rules.length]=variation;
+      tmpJackpots[rules.length]=getJackpot(variation);
+      variations=tmp;
+      variationJackpots=tmpJackpots;
+      for (int i=0;i<stripes.length;i++) {
+        synchronized(stripes[i]) {
+          if (stripes[i].store!=null) stripes[i].store.setRules(tmp,tmpJackpots);
+        }
+      }
+      return rules.length;
+    }
+  }
+
+  /**
+   * Get the store of a stripe, creating it if need be. Must hold the stripe's lock.
+   * @param id a session on the stripe (or the stripe's index)
+   */
+  private SessionStore storeOf(Stripe stripe, int id) {
+    if (stripe.store==null) {
+      stripe.store = new SessionStore(16,createRandom(id & (stripes.length-1)));
+      stripe.store.setRules(variations,variationJackpots);
+    }
+    return stripe.store;
+  }
+
+  /**
+   * Find the partition a session lives in
+   * @param id session id
+   * @return the responsible stripe
+   */
+  private Stripe stripeOf(int id) {
+    // Ids are handed out sequentially, so the low bits already spread well.
+    return stripes[id & (stripes.length-1)];
+  }
+
+  private static byte[] toBytes(String s) {
+    try {
+      return s.getBytes("UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e); // Every JVM has UTF-8
+    }
+  }
+
+  private static String fromBytes(byte[] b) {
+    try {
+      return new String(b,"UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,457 @@
+package de.onyxbits.pocketbandit;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compact, columnar storage for large numbers of game states. Instead of one
+ * <code>Player</code> object per session, every field lives in its own primitive array,
+ * indexed by session id. This costs 32 bytes per session, no object headers and no
+ * pointers for the garbage collector to chase. Batch operations walk the columns
+ * sequentially.
+ * <p>
+ * A store is not thread safe. Use one store per partition and let a single thread
+ * write to it (see <code>SessionHost</code>).
+ */
+public class SessionStore {
+
+  /**
+   * Size of a session in bytes (as written by <code>snapshot()</code>).
+   */
+  public static final int SESSIONSIZE = 32;
+
+  /**
+   * Marker for <code>snapshot()</code>/<code>restore()</code>
+   */
+  private static final int MAGIC = 0x50425353;
+
+  /**
+   * Prize value that marks a round as lost (same as <code>Variation.getPayout()</code>).
+   */
+  public static final int LOST = -1;
+
+  /**
+   * Variation index of a session that is not open.
+   */
+  public static final int CLOSED = -1;
+
+  /**
+   * The rules, sessions refer to them by index
+   */
+  private Variation[] variations = new Variation[0];
+
+  /**
+   * The progressive jackpots of the <code>variations</code> (null where there is none).
+   */
+  private Jackpot[] jackpots = new Jackpot[0];
+
+  /**
+   * Source of randomness for all sessions in the store
+   */
+  private Random rng;
+
+  /**
+   * Number of sessions in the store (open or not)
+   */
+  private int size;
+
+  /**
+   * The payline while a round is evaluated.
+   */
+  private int[] line = new int[3];
+
+  // The columns. See Player for their meaning.
+  private int[] round;
+  private int[] credit;
+  private int[] highscore;
+  private int[] streakOfBadLuck;
+  private int[] streakOfLuck;
+  private int[] freeloaderCount;
+  private int[] payline;
+  private short[] variation;
+  private byte[] luckyCoin;
+  private byte[] bet;
+
+  /**
+   * Create a new store
+   * @param capacity initial number of sessions to reserve memory for.
+   * @param rng source of randomness for rolling the reels and lucky coins.
+   */
+  public SessionStore(int capacity, Random rng) {
+    if (rng==null) throw new NullPointerException();
+    this.rng=rng;
+    capacity=Math.max(capacity,16);
+    round = new int[capacity];
+    credit = new int[capacity];
+    highscore = new int[capacity];
+    streakOfBadLuck = new int[capacity];
+    streakOfLuck = new int[capacity];
+    freeloaderCount = new int[capacity];
+    payline = new int[capacity];
+    variation = new short[capacity];
+    luckyCoin = new byte[capacity];
+    bet = new byte[capacity];
+  }
+
+  /**
+   * Set the rules sessions may be played by. Rules may be added, but an index must keep
+   * referring to the same machine.
+   * @param variations the rules. Sessions refer to them by index.
+   * @param jackpots the progressive jackpot of each variation (null where there is none).
+   */
+  public void setRules(Variation[] variations, Jackpot[] jackpots) {
+    if (variations.length!=jackpots.length) throw new IllegalArgumentException();
+    if (variations.length>Short.MAX_VALUE) throw new IllegalArgumentException("Too many variations");
+    this.variations=variations;
+    this.jackpots=jackpots;
+  }
+
+  /**
+   * Open a session with fresh state. Skipped ids are left closed.
+   * @param id the session to open. Should not be open already.
+   * @param variationIndex index of the rules to play by.
+   */
+  public void open(int id, int variationIndex) {
+    Variation v = variations[variationIndex]; // Crash early on a bad index
+    if (id>=size) {
+      ensureCapacity(id+1);
+      Arrays.fill(variation,size,id,(short)CLOSED);
+      size=id+1;
+    }
+    variation[id]=(short)variationIndex;
+    credit[id]=v.seedCapital;
+    highscore[id]=v.seedCapital;
+    luckyCoin[id]=(byte)rng.nextInt(3);
+    round[id]=0;
+    streakOfBadLuck[id]=0;
+    streakOfLuck[id]=0;
+    freeloaderCount[id]=0;
+    payline[id]=0;
+    bet[id]=0;
+  }
+
+  /**
+   * Close a session
+   * @param id the session to close.
+   * @return true if the session was open.
+   */
+  public boolean close(int id) {
+    if (!isOpen(id)) return false;
+    variation[id]=(short)CLOSED;
+    return true;
+  }
+
+  /**
+   * Check whether a session is open
+   * @param id the session in question
+   * @return true if it is open
+   */
+  public boolean isOpen(int id) {
+    return id>=0 && id<size && variation[id]!=CLOSED;
+  }
+
+  /**
+   * Query the number of sessions
+   * @return one past the highest id that was ever opened.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Query the rules a session plays by
+   * @param id the session
+   * @return index of the variation or <code>CLOSED</code>.
+   */
+  public int getVariation(int id) {
+    return variation[id];
+  }
+
+  /**
+   * Query how much money a session has on hand
+   * @param id the session
+   * @return cash on hand
+   */
+  public int getCredit(int id) {
+    return credit[id];
+  }
+
+  /**
+   * Query the all time highscore of a session
+   * @param id the session
+   * @return highscore
+   */
+  public int getHighscore(int id) {
+    return highscore[id];
+  }
+
+  /**
+   * Copy the state of a <code>Player</code> into the store.
+   * @param id session to overwrite
+   * @param player the state to copy. Its <code>Variation</code> must be known to the store.
+   */
+  public void capture(int id, Player player) {
+    int idx = indexOf(player.variation);
+    if (idx==-1) throw new IllegalArgumentException("Unknown variation");
+    if (id>=size) open(id,idx);
+    variation[id]=(short)idx;
+    round[id]=player.round;
+    credit[id]=player.credit;
+    highscore[id]=player.highscore;
+    streakOfBadLuck[id]=player.streakOfBadLuck;
+    streakOfLuck[id]=player.streakOfLuck;
+    freeloaderCount[id]=player.freeloaderCount;
+    luckyCoin[id]=(byte)player.luckyCoin;
+    bet[id]=(byte)player.bet;
+    payline[id]=(player.payline[0]&0xff) | (player.payline[1]&0xff)<<8 | (player.payline[2]&0xff)<<16;
+  }
+
+  /**
+   * Copy a session from the store into a <code>Player</code> object (e.g. for showing it on
+   * screen).
+   * @param id session to read. Must be open.
+   * @param player the object to overwrite. Must play the same <code>Variation</code>.
+   */
+  public void restore(int id, Player player) {
+    if (!isOpen(id)) throw new IllegalArgumentException("No such session: "+id);
+    if (player.variation!=variations[variation[id]]) throw new IllegalArgumentException("Variation mismatch");
+    player.round=round[id];
+    player.credit=credit[id];
+    player.highscore=highscore[id];
+    player.streakOfBadLuck=streakOfBadLuck[id];
+    player.streakOfLuck=streakOfLuck[id];
+    player.freeloaderCount=freeloaderCount[id];
+    player.luckyCoin=luckyCoin[id];
+    player.bet=bet[id];
+    player.payline[0]=payline[id]&0xff;
+    player.payline[1]=(payline[id]>>8)&0xff;
+    player.payline[2]=(payline[id]>>16)&0xff;
+  }
+
+  /**
+   * Place bets on a batch of sessions (see <code>Player.gamble()</code>). This also feeds
+   * the progressive jackpots.
+   * @param ids the sessions. Must be open.
+   * @param coins which coin slots each session bets as a bitmask (see
+   * <code>SessionHost.play()</code>).
+   * @param count number of entries to process
+   */
+  public void gamble(int[] ids, int[] coins, int count) {
+    for (int i=0;i<count;i++) {
+      int id=ids[i];
+      int amount=Integer.bitCount(coins[i] & 7);
+      if (amount==0) {
+        freeloaderCount[id]++;
+      }
+      else {
+        freeloaderCount[id]=0;
+      }
+      bet[id]=(byte)amount;
+      credit[id]-=amount;
+      Jackpot jackpot = jackpots[variation[id]];
+      if (jackpot!=null && amount>0) {
+        jackpot.contribute(Math.round(amount*variations[variation[id]].jackpotShare*10));
+      }
+    }
+  }
+
+  /**
+   * Put random symbols on the payline of a batch of sessions and evaluate them against
+   * their bets (see <code>Player.roll()</code> and <code>Player.settle()</code>). The
+   * sessions are not marked up yet, that is done by passing the prizes on to
+   * <code>applyRounds()</code>.
+   * @param ids the sessions. Must have placed their bets.
+   * @param coins the bitmasks that were passed to <code>gamble()</code>. Tells whether the
+   * lucky coin was played.
+   * @param prizes receives what each session won (payout plus bonus plus jackpot) or
+   * <code>LOST</code>.
+   * @param count number of entries to process
+   */
+  public void roll(int[] ids, int[] coins, int[] prizes, int count) {
+    for (int i=0;i<count;i++) {
+      int id=ids[i];
+      Variation v = variations[variation[id]];
+      for (int reel=0;reel<line.length;reel++) {
+        line[reel]=v.pick(reel,rng,round[id]*line.length+reel);
+      }
+      payline[id]=(line[0]&0xff) | (line[1]&0xff)<<8 | (line[2]&0xff)<<16;
+      int prize=v.getPayout(bet[id],line);
+      if (prize<0) {
+        prizes[i]=LOST;
+        continue;
+      }
+      if (prize>0 && (coins[i] & (1<<luckyCoin[id]))!=0) {
+        prize+=v.getBonus(bet[id],rng);
+      }
+      Jackpot jackpot = jackpots[variation[id]];
+      if (jackpot!=null && bet[id]>0 && v.isJackpot(line)) {
+        prize+=jackpot.award();
+      }
+      prizes[i]=prize;
+    }
+  }
+
+  /**
+   * Mark up the current round of a batch of sessions as won or lost (see
+   * <code>Player.win()</code> and <code>Player.loose()</code>). Lucky coins are rerolled
+   * for every session that reaches its variation's <code>luckyCoinReRoll</code>.
+   * @param ids the sessions
+   * @param prizes how much each session won or <code>LOST</code>.
+   * @param count number of entries to process
+   */
+  public void applyRounds(int[] ids, int[] prizes, int count) {
+    for (int i=0;i<count;i++) {
+      int id=ids[i];
+      int prize=prizes[i];
+      bet[id]=0;
+      round[id]++;
+      if (prize==LOST) {
+        streakOfBadLuck[id]++;
+        streakOfLuck[id]=0;
+      }
+      else {
+        credit[id]+=prize;
+        streakOfBadLuck[id]=0;
+        streakOfLuck[id]++;
+        if (credit[id]>highscore[id]) highscore[id]=credit[id];
+      }
+    }
+    reRollLuckyCoins(ids,count);
+  }
+
+  /**
+   * Reroll the lucky coin of every session in a batch that has reached its variation's
+   * <code>luckyCoinReRoll</code>.
+   * @param ids the sessions
+   * @param count number of entries to process
+   */
+  public void reRollLuckyCoins(int[] ids, int count) {
+    for (int i=0;i<count;i++) {
+      int id=ids[i];
+      if (round[id] % variations[variation[id]].luckyCoinReRoll == 0) {
+        luckyCoin[id]=(byte)rng.nextInt(3);
+      }
+    }
+  }
+
+  /**
+   * Query how many bytes <code>snapshot()</code> needs.
+   * @return buffer size for a snapshot of the current state.
+   */
+  public int snapshotSize() {
+    return 8+size*SESSIONSIZE;
+  }
+
+  /**
+   * Write all sessions to a buffer, column by column.
+   * @param out buffer to write to. Must have at least <code>snapshotSize()</code> bytes remaining.
+   */
+  public void snapshot(ByteBuffer out) {
+    out.putInt(MAGIC);
+    out.putInt(size);
+    putColumn(out,round);
+    putColumn(out,credit);
+    putColumn(out,highscore);
+    putColumn(out,streakOfBadLuck);
+    putColumn(out,streakOfLuck);
+    putColumn(out,freeloaderCount);
+    putColumn(out,payline);
+    out.asShortBuffer().put(variation,0,size);
+    out.position(out.position()+2*size);
+    out.put(luckyCoin,0,size);
+    out.put(bet,0,size);
+  }
+
+  /**
+   * Replace all sessions with the contents of a snapshot. The rules must already be set, with
+   * the same indices as when the snapshot was taken. The store is left untouched if the
+   * snapshot is rejected.
+   * @param in buffer as written by <code>snapshot()</code>
+   * @throws IllegalArgumentException if the buffer does not contain a complete snapshot or
+   * refers to rules that are not set.
+   */
+  public void restore(ByteBuffer in) {
+    if (in.remaining()<8 || in.getInt()!=MAGIC) throw new IllegalArgumentException("Not a session snapshot");
+    int n=in.getInt();
+    if (n<0 || n>in.remaining()/SESSIONSIZE) throw new IllegalArgumentException("Truncated session snapshot");
+    int len=Math.max(n,16);
+    int[] round = getColumn(in,len,n);
+    int[] credit = getColumn(in,len,n);
+    int[] highscore = getColumn(in,len,n);
+    int[] streakOfBadLuck = getColumn(in,len,n);
+    int[] streakOfLuck = getColumn(in,len,n);
+    int[] freeloaderCount = getColumn(in,len,n);
+    int[] payline = getColumn(in,len,n);
+    short[] variation = new short[len];
+    in.asShortBuffer().get(variation,0,n);
+    in.position(in.position()+2*n);
+    byte[] luckyCoin = new byte[len];
+    in.get(luckyCoin,0,n);
+    byte[] bet = new byte[len];
+    in.get(bet,0,n);
+    for (int i=0;i<n;i++) {
+      if (variation[i]==CLOSED) continue;
+      if (variation[i]<0 || variation[i]>=variations.length) {
+        throw new IllegalArgumentException("Session "+i+" refers to unknown rules");
+      }
+      if (luckyCoin[i]<0 || luckyCoin[i]>2 || bet[i]<0 || bet[i]>3) {
+        throw new IllegalArgumentException("Session "+i+" is corrupt");
+      }
+    }
+    this.round=round;
+    this.credit=credit;
+    this.highscore=highscore;
+    this.streakOfBadLuck=streakOfBadLuck;
+    this.streakOfLuck=streakOfLuck;
+    this.freeloaderCount=freeloaderCount;
+    this.payline=payline;
+    this.variation=variation;
+    this.luckyCoin=luckyCoin;
+    this.bet=bet;
+    size=n;
+  }
+
+  /**
+   * Find the index of a <code>Variation</code>
+   * @param v the rules to look for
+   * @return index into <code>variations</code> or -1 if not found.
+   */
+  private int indexOf(Variation v) {
+    for (int i=0;i<variations.length;i++) {
+      if (variations[i]==v) return i;
+    }
+    return -1;
+  }
+
+  private void putColumn(ByteBuffer out, int[] column) {
+    out.asIntBuffer().put(column,0,size);
+    out.position(out.position()+4*size);
+  }
+
+  private static int[] getColumn(ByteBuffer in, int len, int n) {
+    int[] ret = new int[len];
+    in.asIntBuffer().get(ret,0,n);
+    in.position(in.position()+4*n);
+    return ret;
+  }
+
+  /**
+   * Make sure the columns can hold a given number of sessions
+   * @param capacity number of sessions
+   */
+  private void ensureCapacity(int capacity) {
+    if (capacity<=round.length) return;
+    int len = Math.max(capacity,round.length*2);
+    round = Arrays.copyOf(round,len);
+    credit = Arrays.copyOf(credit,len);
+    highscore = Arrays.copyOf(highscore,len);
+    streakOfBadLuck = Arrays.copyOf(streakOfBadLuck,len);
+    streakOfLuck = Arrays.copyOf(streakOfLuck,len);
+    freeloaderCount = Arrays.copyOf(freeloaderCount,len);
+    payline = Arrays.copyOf(payline,len);
+    variation = Arrays.copyOf(variation,len);
+    luckyCoin = Arrays.copyOf(luckyCoin,len);
+    bet = Arrays.copyOf(bet,len);
+  }
+}
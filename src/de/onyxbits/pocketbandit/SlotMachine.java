@@ -13,6 +13,7 @@ import de.onyxbits.bureauengine.*;
 import de.onyxbits.bureauengine.util.*;
 import de.onyxbits.bureauengine.audio.*;
 import de.onyxbits.bureauengine.screen.*;
+import de.onyxbits.bureauengine.state.*;
 import com.badlogic.gdx.scenes.scene2d.utils.*;
 
 /**
@@ -25,12 +26,18 @@ public class SlotMachine extends BureauGame {
   public Skin skin;
   public TrialPeriod trialPeriod;
   public LinkHandler linkHandler;
+  public SessionHost sessionHost;
   public Loader loader;
   
   protected void bootGame() {
     fadeOverScreen = new FadeOverScreen();
-    loader=new Loader(prefs);
+    sessionHost = new SessionHost();
+    loader=new Loader(sessionHost,prefs,rng);
     loader.rescan();
+    if (Gdx.app.getType()==Application.ApplicationType.Desktop) {
+      // Development: pick up edited paytables without restarting.
+      loader.watch(Gdx.files.local(Loader.RULESDIR),1000);
+    }
     linkHandler = new LinkHandler();
     
     try {
@@ -55,7 +62,13 @@ public class SlotMachine extends BureauGame {
   }
   
   protected Preferences createPreferences() {
-    return Gdx.app.getPreferences("PocketBandit");
+    LogPreferences ret = new LogPreferences(Gdx.files.local("PocketBandit.kv"));
+    if (ret.isFresh()) {
+      // Migrate from the platform preferences, which older versions used.
+      ret.put(Gdx.app.getPreferences("PocketBandit").get());
+      ret.flush();
+    }
+    return ret;
   }
   
   protected MuteManager createMuteManager() {
@@ -83,16 +96,17 @@ public class SlotMachine extends BureauGame {
     ScrollPane.ScrollPaneStyle scrollPaneStyle = new ScrollPane.ScrollPaneStyle();
     scrollPaneStyle.background = new NinePatchDrawable(new NinePatch(globalAtlas.findRegion("roundbox_grey"),8,8,8,8));
     skin.add("default",scrollPaneStyle);
+    
+    TextButton.TextButtonStyle textButtonStyle = new TextButton.TextButtonStyle();
+    textButtonStyle.up = new NinePatchDrawable(new NinePatch(globalAtlas.findRegion("roundbox_grey"),8,8,8,8));
+    textButtonStyle.down = new NinePatchDrawable(new NinePatch(globalAtlas.findRegion("squarebox_grey"),8,8,8,8));
+    textButtonStyle.font = defaultFont;
+    textButtonStyle.fontColor = Color.BLACK;
+    skin.add("default",textButtonStyle);
 
     return new MenuScreen<SlotMachine>(this);
   }
   
-  @Override
-  public void pause() {
-    prefs.flush();
-    super.pause();
-  }
-  
   @Override
   public void resume() {
     fadeOverScreen = new FadeOverScreen();
@@ -101,7 +115,7 @@ public class SlotMachine extends BureauGame {
   
   @Override
   public void dispose() {
-    prefs.flush();
+    loader.dispose();
     skin.dispose();
     super.dispose();
   }
@@ -5,6 +5,7 @@ import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Preferences;
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Constants that describe symbols, probabilities and payouts. All public fields
@@ -65,14 +66,25 @@ public class Variation {
   public float[] luckyCoinChance={0.5f, 0.25f, 0.125f};
   
   /**
-   * For debugging only : not so random random picks
+   * Percentage of every coin bet that goes into the progressive jackpot. A value of 0 or
+   * less is interpreted as "game does not have this feature".
    */
-  private int[] symbolSequence;
+  public float jackpotShare = 0;
+  
+  /**
+   * Index of the paytable row that pays out the jackpot (in addition to the regular payout).
+   */
+  public int jackpotRow = 0;
+  
+  /**
+   * What the jackpot starts out with (in coins).
+   */
+  public int jackpotSeed = 0;
   
   /**
-   * For debuggin: which random pick to pick next
+   * For debugging only : not so random random picks
    */
-  private int symbolSequenceIndex;
+  private int[] symbolSequence;
   
   public Variation(){}
   
@@ -113,36 +125,55 @@ public class Variation {
     }
   }
   
+  /**
+   * Check if a payline wins the progressive jackpot.
+   * @param payline the three symbols on the payline (index into <code>symbolNames</code>
+   * @return true if this game has a jackpot and the payline hits the jackpot row.
+   */
+  public boolean isJackpot(int[] payline) {
+    return jackpotShare>0 && match(payline)==jackpotRow;
+  }
+  
   /**
    * Get the bonus payout. This method calculates the bonus payout on the assumption that
    * the lucky coin has been played.
    * @param bet how many coins were bet (0-3)
+   * @param rng source of randomness
    * @return number of bonus coins to award (always 0 if no coins were bet).
    */
-  public int getBonus(int bet) {
+  public int getBonus(int bet, Random rng) {
     int ret =0;
-    if (bet>0 && bet <4 && SlotMachine.rng.nextFloat()<=luckyCoinChance[bet-1]) {
+    if (bet>0 && bet <4 && rng.nextFloat()<=luckyCoinChance[bet-1]) {
       ret=luckyCoinBonus;
     }
     return ret;
   }
   
   /**
-   * Randomly select a new symbol.
+   * Randomly select a new symbol. This does not change the <code>Variation</code>, so
+   * several players may pick from the same one concurrently.
    * @param reel which <code>weightTable</code> (0-2) to take probilities from.
+   * @param rng source of randomness
+   * @param draw how many symbols the caller picked before (only matters when debugging
+   * with a <code>symbolSequence</code>, which is replayed per caller).
    * @return the rolled image as an index into <code>symbolNames</code>
    */
-  public int pick(int reel) {
-    int ret = 0;
-    if (symbolSequence!=null && symbolSequenceIndex<symbolSequence.length) {
-      ret = symbolSequence[symbolSequenceIndex];
-      symbolSequenceIndex++;
+  public int pick(int reel, Random rng, int draw) {
+    if (symbolSequence!=null && draw>=0 && draw<symbolSequence.length) {
+      return symbolSequence[draw];
     }
-    else {
-      int idx = SlotMachine.rng.nextInt(weightTable[reel].length);
-      ret=weightTable[reel][idx];
-    }
-    return ret;
+    return pickRandom(reel,rng);
+  }
+  
+  /**
+   * Randomly select a new symbol, even when debugging with a <code>symbolSequence</code>
+   * (e.g. for symbols that merely decorate the reels).
+   * @param reel which <code>weightTable</code> (0-2) to take probilities from.
+   * @param rng source of randomness
+   * @return the rolled image as an index into <code>symbolNames</code>
+   */
+  public int pickRandom(int reel, Random rng) {
+    return weightTable[reel][rng.nextInt(weightTable[reel].length)];
   }
   
   /**